@@ -0,0 +1,91 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Dimension;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Random;
+
+import javax.swing.JInternalFrame;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * A desktop pane in a scroll pane, filled with frames, that the benchmarks
+ * run against. Needs no window, so it works headless.
+ *
+ * Once the desktop is built it is only touched on the event dispatch thread,
+ * so every benchmarked operation pays the same small
+ * <code>invokeAndWait</code> hand-off.
+ *
+ * @author Dean
+ */
+final class BenchmarkDesktop {
+
+	static final int WIDTH = 1920;
+	static final int HEIGHT = 1080;
+
+	final JScrollPane scrollPane;
+	final MDIDesktopPane desktop;
+	final MDIDesktopManager manager;
+	final JInternalFrame[] frames;
+
+	BenchmarkDesktop(final int frameCount) {
+		scrollPane = new JScrollPane();
+		desktop = new MDIDesktopPane();
+		manager = (MDIDesktopManager) desktop.getDesktopManager();
+		frames = new JInternalFrame[frameCount];
+		onEdt(new Runnable() {
+			@Override
+			public void run() {
+				scrollPane.setViewportView(desktop);
+				scrollPane.setSize(WIDTH, HEIGHT);
+				scrollPane.getViewport().setExtentSize(
+						new Dimension(WIDTH, HEIGHT));
+				desktop.setBounds(0, 0, WIDTH, HEIGHT);
+
+				Random random = new Random(42);
+				for (int i = 0; i < frames.length; i++) {
+					JInternalFrame frame = new JInternalFrame("Frame " + i,
+							true, true, true, true);
+					frame.setBounds(random.nextInt(WIDTH),
+							random.nextInt(HEIGHT), 200 + random.nextInt(200),
+							150 + random.nextInt(150));
+					desktop.add(frame);
+					frames[i] = frame;
+				}
+			}
+		});
+		drainEdt();
+	}
+
+	/**
+	 * Run on the event dispatch thread and wait for it to finish
+	 *
+	 * @param work
+	 */
+	static void onEdt(Runnable work) {
+		if (SwingUtilities.isEventDispatchThread()) {
+			work.run();
+			return;
+		}
+		try {
+			SwingUtilities.invokeAndWait(work);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Let anything the last operation queued, such as resize passes and
+	 * component events, run before the next one starts
+	 */
+	static void drainEdt() {
+		onEdt(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+}
@@ -0,0 +1,109 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.beans.PropertyVetoException;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JInternalFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tile, cascade and minimise-all on desktops of increasing size, and the
+ * tile geometry on its own
+ *
+ * @author Dean
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DesktopLayoutBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int frameCount;
+
+	private BenchmarkDesktop desktop;
+
+	private MDIDesktopLayoutEngine.FrameConstraints[] constraints;
+
+	private final Runnable tile = new Runnable() {
+		@Override
+		public void run() {
+			desktop.desktop.tileFrames();
+		}
+	};
+
+	private final Runnable cascade = new Runnable() {
+		@Override
+		public void run() {
+			desktop.desktop.cascadeFrames();
+		}
+	};
+
+	private final Runnable minimiseAndRestore = new Runnable() {
+		@Override
+		public void run() {
+			desktop.desktop.minimizeAllFrames();
+			for (JInternalFrame frame : desktop.frames) {
+				try {
+					frame.setIcon(false);
+				} catch (PropertyVetoException e) {
+					// Plain frames never veto
+				}
+			}
+		}
+	};
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		desktop = new BenchmarkDesktop(frameCount);
+		constraints = new MDIDesktopLayoutEngine.FrameConstraints[frameCount];
+		for (int i = 0; i < frameCount; i++) {
+			// Every seventh frame has a fixed size
+			constraints[i] = new MDIDesktopLayoutEngine.FrameConstraints(100,
+					50, Integer.MAX_VALUE, Integer.MAX_VALUE, 300, 200,
+					i % 7 != 0);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void drain() {
+		BenchmarkDesktop.drainEdt();
+	}
+
+	@Benchmark
+	public void tileFrames() {
+		BenchmarkDesktop.onEdt(tile);
+	}
+
+	/**
+	 * The tile geometry alone, as run off the event dispatch thread
+	 */
+	@Benchmark
+	public int[] tileGeometry() {
+		return MDIDesktopLayoutEngine.tile(constraints, 1600, 1200);
+	}
+
+	@Benchmark
+	public void cascadeFrames() {
+		BenchmarkDesktop.onEdt(cascade);
+	}
+
+	@Benchmark
+	public void minimiseAndRestoreAllFrames() {
+		BenchmarkDesktop.onEdt(minimiseAndRestore);
+	}
+}
@@ -0,0 +1,118 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Rectangle;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Desktop resize passes and desktop icon width computation
+ *
+ * @author Dean
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DesktopManagerBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int frameCount;
+
+	private BenchmarkDesktop desktop;
+
+	private final Runnable resize = new Runnable() {
+		@Override
+		public void run() {
+			desktop.manager.resizeDesktopNow();
+		}
+	};
+
+	private final Runnable resizeFullScan = new Runnable() {
+		@Override
+		public void run() {
+			desktop.manager.invalidateDesktopExtent();
+			desktop.manager.resizeDesktopNow();
+		}
+	};
+
+	private final Runnable iconBounds = new Runnable() {
+		@Override
+		public void run() {
+			for (int i = 0; i < desktop.frames.length; i++) {
+				iconBoundsSink = desktop.manager
+						.getBoundsForIconOf(desktop.frames[i]);
+			}
+		}
+	};
+
+	private final Runnable iconBoundsColdCache = new Runnable() {
+		@Override
+		public void run() {
+			desktop.manager.clearTitleWidthCache();
+			for (int i = 0; i < desktop.frames.length; i++) {
+				iconBoundsSink = desktop.manager
+						.getBoundsForIconOf(desktop.frames[i]);
+			}
+		}
+	};
+
+	private Rectangle iconBoundsSink;
+
+	@Setup
+	public void setUp() {
+		desktop = new BenchmarkDesktop(frameCount);
+	}
+
+	/**
+	 * One resize pass using the incrementally tracked extent
+	 */
+	@Benchmark
+	public void resizeDesktop() {
+		BenchmarkDesktop.onEdt(resize);
+	}
+
+	/**
+	 * One resize pass that has to rescan every frame, as before the extent
+	 * tracker
+	 */
+	@Benchmark
+	public void resizeDesktopFullScan() {
+		BenchmarkDesktop.onEdt(resizeFullScan);
+	}
+
+	/**
+	 * Icon bounds for every frame, as minimise-all asks for them
+	 *
+	 * @return last bounds
+	 */
+	@Benchmark
+	public Rectangle computeDesktopIconWidth() {
+		BenchmarkDesktop.onEdt(iconBounds);
+		return iconBoundsSink;
+	}
+
+	/**
+	 * Icon bounds for every frame with nothing cached, as after a look and
+	 * feel change
+	 *
+	 * @return last bounds
+	 */
+	@Benchmark
+	public Rectangle computeDesktopIconWidthColdCache() {
+		BenchmarkDesktop.onEdt(iconBoundsColdCache);
+		return iconBoundsSink;
+	}
+}
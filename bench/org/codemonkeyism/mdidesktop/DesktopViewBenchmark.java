@@ -0,0 +1,92 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.GraphicsEnvironment;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Adding and removing a frame through the view with a desktop already full
+ * of frames. The view owns a <code>JFrame</code>, so this one needs a display;
+ * run it under Xvfb with <code>-Dbench.headless=false</code>.
+ *
+ * @author Dean
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DesktopViewBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int frameCount;
+
+	private MDIDesktopAbstractView view;
+
+	private final Runnable addAndRemove = new Runnable() {
+		@Override
+		public void run() {
+			MDIDesktopFrame frame = new MDIDesktopFrame(view.getDesktopPane(),
+					"Benchmark", true, true, true, true);
+			frame.setSize(300, 200);
+			view.addFrame(frame);
+			view.removeFrame(frame);
+		}
+	};
+
+	@Setup
+	public void setUp() {
+		if (GraphicsEnvironment.isHeadless()) {
+			throw new IllegalStateException(
+					"DesktopViewBenchmark needs a display, run it under Xvfb with -Dbench.headless=false");
+		}
+		BenchmarkDesktop.onEdt(new Runnable() {
+			@Override
+			public void run() {
+				view = new MDIDesktopAbstractView() {
+				};
+				view.getFrame().setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+				view.setVisible(true);
+				for (int i = 0; i < frameCount; i++) {
+					MDIDesktopFrame frame = new MDIDesktopFrame(view
+							.getDesktopPane(), "Frame " + i, true, true, true,
+							true);
+					frame.setSize(200, 150);
+					view.addFrame(frame);
+				}
+			}
+		});
+		BenchmarkDesktop.drainEdt();
+	}
+
+	@TearDown
+	public void tearDown() {
+		BenchmarkDesktop.onEdt(new Runnable() {
+			@Override
+			public void run() {
+				view.getFrame().dispose();
+			}
+		});
+	}
+
+	@Benchmark
+	public void addFrameRemoveFrame() {
+		BenchmarkDesktop.onEdt(addAndRemove);
+		BenchmarkDesktop.drainEdt();
+	}
+}
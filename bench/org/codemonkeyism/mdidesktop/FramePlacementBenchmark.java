@@ -0,0 +1,69 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Point;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JInternalFrame;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of placing one more frame on a desktop that already has frames on it,
+ * comparing the original diagonal stepping with the free-space search
+ *
+ * @author Dean
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FramePlacementBenchmark {
+
+	@Param({ "10", "100", "1000", "5000" })
+	public int frameCount;
+
+	@Param({ "stepping", "freeSpace" })
+	public String strategy;
+
+	private BenchmarkDesktop desktop;
+	private FramePlacementStrategy placement;
+	private JInternalFrame frame;
+	private Point location;
+
+	private final Runnable place = new Runnable() {
+		@Override
+		public void run() {
+			frame.setLocation(0, 0);
+			location = placement.placeFrame(desktop.desktop, frame);
+		}
+	};
+
+	@Setup
+	public void setUp() {
+		desktop = new BenchmarkDesktop(frameCount);
+		placement = "stepping".equals(strategy) ? new SteppingPlacementStrategy()
+				: new FreeSpacePlacementStrategy();
+		frame = new JInternalFrame("New frame", true, true, true, true);
+		frame.setSize(300, 200);
+		// Build the spatial index outside the measurement
+		BenchmarkDesktop.onEdt(place);
+	}
+
+	@Benchmark
+	public Point placeFrame() {
+		BenchmarkDesktop.onEdt(place);
+		return location;
+	}
+}
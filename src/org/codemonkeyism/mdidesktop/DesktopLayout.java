@@ -0,0 +1,29 @@
+package org.codemonkeyism.mdidesktop;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopLayoutEngine.FrameConstraints;
+
+/**
+ * Arranges every frame on the desktop, for
+ * <code>MDIDesktopPane.layoutFrames</code>.
+ * 
+ * Layouts only do geometry and must not touch Swing: they may be run off the
+ * event dispatch thread, and the desktop applies the bounds they return.
+ * 
+ * @author Dean
+ */
+public interface DesktopLayout {
+
+	/**
+	 * Work out where each frame goes
+	 * 
+	 * @param frames
+	 *            most recently activated first
+	 * @param width
+	 *            of the desktop
+	 * @param height
+	 *            of the desktop
+	 * @return x, y, width and height of each frame in turn, in the same order
+	 *         as the frames
+	 */
+	int[] layout(FrameConstraints[] frames, int width, int height);
+}
@@ -0,0 +1,32 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Point;
+
+import javax.swing.JInternalFrame;
+
+/**
+ * Decides where a frame goes when it is added to the desktop through
+ * <code>MDIDesktopAbstractView.addFrame</code>.
+ * 
+ * @author Dean
+ */
+public interface FramePlacementStrategy {
+
+	/**
+	 * Work out where a frame that is about to be added should go
+	 * 
+	 * @param desktop
+	 * @param frame
+	 *            not yet on the desktop, already sized
+	 * @return location, or null to leave the frame where it is
+	 */
+	Point placeFrame(MDIDesktopPane desktop, JInternalFrame frame);
+
+	/**
+	 * A frame has been removed from the desktop
+	 * 
+	 * @param desktop
+	 * @param frame
+	 */
+	void frameRemoved(MDIDesktopPane desktop, JInternalFrame frame);
+}
@@ -0,0 +1,170 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.JInternalFrame;
+
+/**
+ * Places each new frame in the top-left-most free area of the visible
+ * desktop that is big enough for it.
+ *
+ * The visible area is rasterised onto a coarse occupancy grid from the frames
+ * the spatial index finds there, using a difference grid so each frame costs
+ * the same however big it is. A summed-area table over that grid tests any
+ * candidate position in constant time, so a placement costs one pass over the
+ * grid plus one step per visible frame. When there is no free area big
+ * enough the frame is stepped diagonally as before.
+ *
+ * Frames that already have a location other than (0, 0) are left alone.
+ *
+ * @author Dean
+ */
+public class FreeSpacePlacementStrategy implements FramePlacementStrategy {
+
+	public static final int DEFAULT_RESOLUTION = 8;
+
+	private final int resolution;
+
+	private final SteppingPlacementStrategy fallback = new SteppingPlacementStrategy();
+
+	private int[] coverage = new int[0];
+	private int[] table = new int[0];
+
+	public FreeSpacePlacementStrategy() {
+		this(DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * @param resolution
+	 *            size in pixels of an occupancy grid cell
+	 */
+	public FreeSpacePlacementStrategy(int resolution) {
+		checkArgument(resolution > 0, "Resolution must be positive");
+		this.resolution = resolution;
+	}
+
+	@Override
+	public Point placeFrame(MDIDesktopPane desktop, JInternalFrame frame) {
+		if (frame.getX() != 0 || frame.getY() != 0) {
+			return null;
+		}
+		Rectangle area = desktop.getVisibleRect();
+		if (area.isEmpty()) {
+			area = new Rectangle(0, 0, desktop.getWidth(), desktop.getHeight());
+		}
+		Point location = findFreeLocation(desktop, frame, area);
+		if (location == null) {
+			return fallback.placeFrame(desktop, frame);
+		}
+		return location;
+	}
+
+	@Override
+	public void frameRemoved(MDIDesktopPane desktop, JInternalFrame frame) {
+		fallback.frameRemoved(desktop, frame);
+	}
+
+	/**
+	 * Find the top-left-most free spot for the frame inside the area
+	 *
+	 * @param desktop
+	 * @param frame
+	 * @param area
+	 * @return location, or null if nothing is free
+	 */
+	Point findFreeLocation(MDIDesktopPane desktop, JInternalFrame frame,
+			Rectangle area) {
+		int gridWidth = area.width / resolution;
+		int gridHeight = area.height / resolution;
+		int frameWidth = cellsCovering(frame.getWidth());
+		int frameHeight = cellsCovering(frame.getHeight());
+		if (frameWidth > gridWidth || frameHeight > gridHeight
+				|| frameWidth == 0 || frameHeight == 0) {
+			return null;
+		}
+
+		// Mark each obstacle's corners in a difference grid so that covering
+		// a cell costs nothing per cell, however large the obstacle
+		int stride = gridWidth + 1;
+		int size = stride * (gridHeight + 1);
+		if (table.length < size) {
+			coverage = new int[size];
+			table = new int[size];
+		} else {
+			Arrays.fill(coverage, 0, size, 0);
+		}
+
+		List<JInternalFrame> obstacles = desktop.getSpatialIndex()
+				.framesIntersecting(area);
+		for (JInternalFrame obstacle : obstacles) {
+			if (obstacle == frame) {
+				continue;
+			}
+			Rectangle r = obstacle.isIcon() ? obstacle.getDesktopIcon()
+					.getBounds() : obstacle.getBounds();
+			int x0 = Math.max(0, Math.floorDiv(r.x - area.x, resolution));
+			int y0 = Math.max(0, Math.floorDiv(r.y - area.y, resolution));
+			int x1 = Math.min(gridWidth, -Math.floorDiv(-(r.x + r.width
+					- area.x), resolution));
+			int y1 = Math.min(gridHeight, -Math.floorDiv(-(r.y + r.height
+					- area.y), resolution));
+			if (x0 >= x1 || y0 >= y1) {
+				continue;
+			}
+			coverage[y0 * stride + x0]++;
+			coverage[y0 * stride + x1]--;
+			coverage[y1 * stride + x0]--;
+			coverage[y1 * stride + x1]++;
+		}
+
+		// Accumulating the differences gives how many frames cover each cell.
+		// At the same time build a summed-area table of covered cells, with an
+		// extra leading row and column of zeros.
+		Arrays.fill(table, 0, stride, 0);
+		for (int y = 0; y < gridHeight; y++) {
+			int row = y * stride;
+			int above = row - stride;
+			int tableRow = row + stride;
+			table[tableRow] = 0;
+			for (int x = 0; x < gridWidth; x++) {
+				int c = coverage[row + x];
+				if (x > 0) {
+					c += coverage[row + x - 1];
+				}
+				if (y > 0) {
+					c += coverage[above + x];
+					if (x > 0) {
+						c -= coverage[above + x - 1];
+					}
+				}
+				coverage[row + x] = c;
+				table[tableRow + x + 1] = (c > 0 ? 1 : 0) + table[tableRow + x]
+						+ table[row + x + 1] - table[row + x];
+			}
+		}
+
+		for (int y = 0; y + frameHeight <= gridHeight; y++) {
+			int top = y * stride;
+			int bottom = (y + frameHeight) * stride;
+			for (int x = 0; x + frameWidth <= gridWidth; x++) {
+				int occupied = table[bottom + x + frameWidth]
+						- table[bottom + x] - table[top + x + frameWidth]
+						+ table[top + x];
+				if (occupied == 0) {
+					return new Point(area.x + x * resolution, area.y + y
+							* resolution);
+				}
+			}
+		}
+		return null;
+	}
+
+	private int cellsCovering(int pixels) {
+		return (pixels + resolution - 1) / resolution;
+	}
+}
@@ -51,6 +51,37 @@ public abstract class MDIDesktopAbstractController {
 		}
 	}
 	
+	public void layoutInternalFrames(DesktopLayout layout) {
+		checkNotNull(layout);
+		if (view != null) {
+			view.layoutInternalFrames(layout);
+		}
+	}
+	
+	public void tileInternalFramesHorizontally() {
+		if (view != null) {
+			view.tileInternalFramesHorizontally();
+		}
+	}
+	
+	public void tileInternalFramesVertically() {
+		if (view != null) {
+			view.tileInternalFramesVertically();
+		}
+	}
+	
+	public void treemapInternalFrames() {
+		if (view != null) {
+			view.treemapInternalFrames();
+		}
+	}
+	
+	public void masterStackInternalFrames() {
+		if (view != null) {
+			view.masterStackInternalFrames();
+		}
+	}
+	
 	public void minimiseAllInternalFrames() {
 		if (view != null) {
 			view.minimiseAllInternalFrames();
@@ -59,7 +90,7 @@ public abstract class MDIDesktopAbstractController {
 	
 	public int getChildFrameCount() {
 		if (view != null) {
-			return view.getDesktopPane().getAllFrames().length;
+			return view.getFrameRegistry().size();
 		}
 		return 0;
 	}
@@ -1,15 +1,24 @@
 package org.codemonkeyism.mdidesktop;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.awt.BorderLayout;
 import java.awt.Point;
 import java.awt.Toolkit;
 import java.beans.PropertyVetoException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 
 import javax.swing.JFrame;
 import javax.swing.JInternalFrame;
 import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopMetrics.Operation;
 
 /**
  * MDI Desktop Controller
@@ -23,11 +32,15 @@ import javax.swing.JScrollPane;
  */
 public abstract class MDIDesktopAbstractView {
 
+	private static final MDIDesktopMetrics METRICS = MDIDesktopMetrics.getInstance();
+
 	private JFrame frame;
 	private MDIDesktopPane desktopPane;
 	private JMenuBar menuBar;
 
-	private Point lastLocation;
+	private FramePlacementStrategy placementStrategy = new SteppingPlacementStrategy();
+	private MDIDesktopFramePool framePool;
+	private final MDIDesktopFrameQueue frameQueue = new MDIDesktopFrameQueue(this);
 
 	/**
 	 * All hail the mighty constructor
@@ -61,9 +74,15 @@ public abstract class MDIDesktopAbstractView {
 		frame.getContentPane().add(scrollPane, BorderLayout.CENTER);
 
 		desktopPane = new MDIDesktopPane();
+		desktopPane.setView(this);
+		// Created up front so it sees every frame addFrame() puts on the desktop
+		desktopPane.getFrameRegistry();
 		// desktopPane.setBackground(Color.LIGHT_GRAY);
-		// desktopPane.setDragMode(JDesktopPane.OUTLINE_DRAG_MODE);
+		// Live drags for frames that paint quickly, ghost or outline for heavy ones
+		desktopPane.setDragMode(MDIDesktopPane.ADAPTIVE_DRAG_MODE);
 		scrollPane.setViewportView(desktopPane);
+		// Reveal scrolls copy what stays in view rather than repaint it all
+		scrollPane.getViewport().setScrollMode(JViewport.BLIT_SCROLL_MODE);
 	}
 
 	public JFrame getFrame() {
@@ -109,67 +128,124 @@ public abstract class MDIDesktopAbstractView {
 	 * Add an internal child frame to the desktop frame.
 	 * 
 	 * This also sets the parent component of the child frame to ensure there is
-	 * no mismatch between various parents and children
+	 * no mismatch between various parents and children. Call on the event
+	 * dispatch thread; other threads should use <code>getFrameQueue()</code>.
 	 * 
 	 * @param childFrame
 	 * @param title
 	 */
-	public synchronized <T extends MDIDesktopFrame> void addFrame(T childFrame) {
-		// Add the new child frame to the parent desktop panel
-		if (childFrame.getParentFrame() == null) {
-			childFrame.setParentFrame(desktopPane);
-		}
-		Point childLocation = childFrame.getLocation();
-		if (lastLocation == null && childLocation.x == 0
-				&& childLocation.y == 0) {
-			lastLocation = new Point(0, 0);
-		} else {
-			if (childLocation.x == 0 && childLocation.y == 0) {
-				int newX = lastLocation.x + MDIDesktopPane.FRAME_OFFSET;
-				int newY = lastLocation.y + MDIDesktopPane.FRAME_OFFSET;
-				newX = newX < 0 ? 0 : newX;
-				newY = newY < 0 ? 0 : newY;
-				
-				int bottomPosition = newY + childFrame.getHeight();
-				if (newX > desktopPane.getSize().getWidth()) {
-					newX = 0;
-				}
-				if (bottomPosition > desktopPane.getSize().getHeight()) {
-					newY = 0;
-				}
-				
-				Point newLocation = new Point(newX, newY);
-				lastLocation = newLocation;
+	public <T extends MDIDesktopFrame> void addFrame(T childFrame) {
+		long start = METRICS.begin(Operation.ADD_FRAME);
+		try {
+			// Add the new child frame to the parent desktop panel
+			if (childFrame.getParentFrame() == null) {
+				childFrame.setParentFrame(desktopPane);
+			}
+			Point newLocation = placementStrategy.placeFrame(desktopPane,
+					childFrame);
+			if (newLocation != null) {
 				childFrame.setLocation(newLocation);
 			}
-		}
-		desktopPane.add(childFrame);
-		childFrame.setVisible(true);
-		try {
-			childFrame.setSelected(true);
-		} catch (PropertyVetoException e) {
-			e.printStackTrace();
+			if (childFrame.hasAsyncContent()) {
+				childFrame.loadContentAsync();
+			}
+			desktopPane.add(childFrame);
+			childFrame.setVisible(true);
+			try {
+				childFrame.setSelected(true);
+			} catch (PropertyVetoException e) {
+				e.printStackTrace();
+			}
+		} finally {
+			METRICS.end(Operation.ADD_FRAME, start);
 		}
 	}
 
 	/**
-	 * Remove an internal child frame from the desktop
+	 * Set how new frames are placed on the desktop. Defaults to stepping each
+	 * frame diagonally from the last one.
+	 * 
+	 * @param placementStrategy
+	 */
+	public void setPlacementStrategy(FramePlacementStrategy placementStrategy) {
+		this.placementStrategy = checkNotNull(placementStrategy);
+	}
+
+	public FramePlacementStrategy getPlacementStrategy() {
+		return placementStrategy;
+	}
+
+	/**
+	 * Hand frames removed with <code>removeFrame()</code> to a pool for reuse.
+	 * Pass null to stop pooling.
+	 * 
+	 * @param framePool
+	 */
+	public void setFramePool(MDIDesktopFramePool framePool) {
+		this.framePool = framePool;
+	}
+
+	public MDIDesktopFramePool getFramePool() {
+		return framePool;
+	}
+
+	/**
+	 * Remove an internal child frame from the desktop. Call on the event
+	 * dispatch thread; other threads should use <code>getFrameQueue()</code>.
 	 * 
 	 * @param childFrame
 	 */
-	public synchronized <T extends JInternalFrame> void removeFrame(T childFrame) {
-		if (lastLocation != null) {
-			if (childFrame.getLocation().x == lastLocation.x
-					&& childFrame.getLocation().y == lastLocation.y) {
-				lastLocation = null;
-			}
-		}
+	public <T extends JInternalFrame> void removeFrame(T childFrame) {
+		long start = METRICS.begin(Operation.REMOVE_FRAME);
 		try {
-			childFrame.setClosed(true);
-		} catch (PropertyVetoException e) {
-			e.printStackTrace();
+			placementStrategy.frameRemoved(desktopPane, childFrame);
+			try {
+				childFrame.setClosed(true);
+			} catch (PropertyVetoException e) {
+				e.printStackTrace();
+			}
+			desktopPane.remove(childFrame);
+			if (framePool != null && childFrame instanceof MDIDesktopFrame) {
+				framePool.release((MDIDesktopFrame) childFrame);
+			}
+		} finally {
+			METRICS.end(Operation.REMOVE_FRAME, start);
 		}
-		desktopPane.remove(childFrame);
+	}
+
+	/**
+	 * Get the queue through which any thread can add, remove and update
+	 * frames
+	 * 
+	 * @return frameQueue
+	 */
+	public MDIDesktopFrameQueue getFrameQueue() {
+		return frameQueue;
+	}
+
+	/**
+	 * Save the layout of the desktop's frames
+	 * 
+	 * @param out
+	 * @throws IOException
+	 * @see MDIDesktopLayoutSnapshot
+	 */
+	public void saveLayout(OutputStream out) throws IOException {
+		MDIDesktopLayoutSnapshot.write(desktopPane, out);
+	}
+
+	/**
+	 * Restore a layout saved with <code>saveLayout()</code>, creating its
+	 * frames with the factory and adding them to the desktop in one pass
+	 * 
+	 * @param in
+	 * @param factory
+	 * @return the restored frames
+	 * @throws IOException
+	 */
+	public List<MDIDesktopFrame> restoreLayout(InputStream in,
+			MDIDesktopLayoutSnapshot.FrameFactory factory) throws IOException {
+		return MDIDesktopLayoutSnapshot.restore(desktopPane, in, factory);
 	}
 
 	/**
@@ -203,6 +279,17 @@ public abstract class MDIDesktopAbstractView {
 		return desktopPane;
 	}
 
+	/**
+	 * Return the registry of the frames on the desktop. It follows
+	 * <code>addFrame()</code> and <code>removeFrame()</code>, and frames
+	 * closed or added any other way.
+	 * 
+	 * @return frameRegistry
+	 */
+	public MDIDesktopFrameRegistry getFrameRegistry() {
+		return getDesktopPane().getFrameRegistry();
+	}
+
 	/**
 	 * Cascade all the internal frames
 	 */
@@ -217,6 +304,45 @@ public abstract class MDIDesktopAbstractView {
 		desktopPane.tileFrames();
 	}
 
+	/**
+	 * Arrange all the internal frames with the given layout
+	 * 
+	 * @param layout
+	 */
+	public void layoutInternalFrames(DesktopLayout layout) {
+		desktopPane.layoutFrames(layout);
+	}
+
+	/**
+	 * Stack all the internal frames top to bottom, each full width
+	 */
+	public void tileInternalFramesHorizontally() {
+		layoutInternalFrames(new TileHorizontalLayout());
+	}
+
+	/**
+	 * Put all the internal frames side by side, each full height
+	 */
+	public void tileInternalFramesVertically() {
+		layoutInternalFrames(new TileVerticalLayout());
+	}
+
+	/**
+	 * Share the desktop out among the internal frames, most recently used
+	 * getting the most space
+	 */
+	public void treemapInternalFrames() {
+		layoutInternalFrames(new TreemapLayout());
+	}
+
+	/**
+	 * Give the most recently used internal frame the left of the desktop and
+	 * stack the rest on the right
+	 */
+	public void masterStackInternalFrames() {
+		layoutInternalFrames(new MasterStackLayout());
+	}
+
 	/**
 	 * Minimise all the internal frames
 	 */
@@ -0,0 +1,267 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+import javax.swing.ImageIcon;
+import javax.swing.UIManager;
+import javax.swing.plaf.UIResource;
+
+/**
+ * Paints the background of an <code>MDIDesktopPane</code>: a plain colour, a
+ * tiled image or a gradient from the top of the desktop to the bottom.
+ *
+ * The colour is looked up once, when the look and feel or the desktop's
+ * background changes, rather than on every paint, and only the area being
+ * repainted is filled. Wallpapers are drawn once into a cached image in the
+ * screen's own format and then copied into place tile by tile, so repainting
+ * a strip of a large scrolled desktop costs a few blits. Small images are
+ * repeated inside the cached tile so there are not too many of them.
+ *
+ * With no wallpaper the desktop is painted by its look and feel, as any other
+ * desktop is; Nimbus is told to paint it through here, so it still gets the
+ * cached colour and clipped fill.
+ *
+ * Get one from <code>MDIDesktopPane.getDesktopBackground()</code>. Use the
+ * event dispatch thread.
+ *
+ * @author Dean
+ */
+public class MDIDesktopBackground {
+
+	private static final int MIN_TILE = 256;
+	private static final int GRADIENT_STRIP = 64;
+
+	private final MDIDesktopPane desktop;
+
+	private Color color;
+
+	private Image wallpaper;
+	private Color gradientTop;
+	private Color gradientBottom;
+
+	private BufferedImage tile;
+	private GraphicsConfiguration tileConfiguration;
+
+	MDIDesktopBackground(MDIDesktopPane desktop) {
+		this.desktop = desktop;
+	}
+
+	/**
+	 * Tile an image over the desktop. Transparent parts show the background
+	 * colour.
+	 *
+	 * @param image
+	 */
+	public void setWallpaper(Image image) {
+		checkNotNull(image);
+		// Make sure it has loaded, so it is only drawn into the tile once
+		wallpaper = image.getWidth(null) < 0 ? new ImageIcon(image).getImage()
+				: image;
+		gradientTop = null;
+		gradientBottom = null;
+		changed();
+	}
+
+	/**
+	 * Shade the desktop from one colour at the top to another at the bottom
+	 *
+	 * @param top
+	 * @param bottom
+	 */
+	public void setGradient(Color top, Color bottom) {
+		gradientTop = checkNotNull(top);
+		gradientBottom = checkNotNull(bottom);
+		wallpaper = null;
+		changed();
+	}
+
+	/**
+	 * Go back to a plain background colour
+	 */
+	public void clearWallpaper() {
+		wallpaper = null;
+		gradientTop = null;
+		gradientBottom = null;
+		changed();
+	}
+
+	public Image getWallpaper() {
+		return wallpaper;
+	}
+
+	public boolean isGradient() {
+		return gradientTop != null;
+	}
+
+	/**
+	 * Is an image or gradient set, rather than a plain colour?
+	 *
+	 * @return hasWallpaper
+	 */
+	public boolean hasWallpaper() {
+		return wallpaper != null || gradientTop != null;
+	}
+
+	/**
+	 * The plain colour, as last looked up
+	 *
+	 * @return color
+	 */
+	public Color getColor() {
+		if (color == null) {
+			color = resolveColor();
+		}
+		return color;
+	}
+
+	/**
+	 * Paint the part of the background inside the graphics' clip
+	 *
+	 * @param g
+	 * @param width
+	 *            of the desktop
+	 * @param height
+	 *            of the desktop
+	 */
+	public void paint(Graphics g, int width, int height) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, width, height);
+		} else {
+			clip = clip.intersection(new Rectangle(0, 0, width, height));
+		}
+		if (clip.isEmpty()) {
+			return;
+		}
+
+		BufferedImage image = getTile(g, height);
+		if (image == null) {
+			g.setColor(getColor());
+			g.fillRect(clip.x, clip.y, clip.width, clip.height);
+			return;
+		}
+
+		int tileWidth = image.getWidth();
+		int tileHeight = image.getHeight();
+		int right = clip.x + clip.width;
+		int bottom = clip.y + clip.height;
+		for (int y = clip.y / tileHeight * tileHeight; y < bottom; y += tileHeight) {
+			for (int x = clip.x / tileWidth * tileWidth; x < right; x += tileWidth) {
+				g.drawImage(image, x, y, null);
+			}
+		}
+	}
+
+	/**
+	 * Called when the look and feel, or the desktop's background colour,
+	 * changes
+	 */
+	void colorsChanged() {
+		color = null;
+		discardTile();
+	}
+
+	private void changed() {
+		discardTile();
+		desktop.repaint();
+	}
+
+	private Color resolveColor() {
+		Color background = desktop.getBackground();
+		// A colour set on the desktop itself wins over the look and feel's
+		if (background != null && !(background instanceof UIResource)) {
+			return background;
+		}
+		// Nimbus paints desktops with a painter, which used the system colour
+		if ("Nimbus".equals(UIManager.getLookAndFeel().getName())) {
+			Color desktopColor = UIManager.getColor("desktop");
+			if (desktopColor != null) {
+				return desktopColor;
+			}
+		}
+		return background == null ? Color.DARK_GRAY : background;
+	}
+
+	/**
+	 * The cached wallpaper tile, drawn first if need be
+	 *
+	 * @return tile, or null for a plain colour
+	 */
+	private BufferedImage getTile(Graphics g, int height) {
+		if (wallpaper == null && gradientTop == null) {
+			return null;
+		}
+		GraphicsConfiguration gc = g instanceof Graphics2D ? ((Graphics2D) g)
+				.getDeviceConfiguration() : null;
+		if (tile != null && tileConfiguration == gc
+				&& (gradientTop == null || tile.getHeight() == height)) {
+			return tile;
+		}
+		discardTile();
+		tile = gradientTop != null ? renderGradient(gc, Math.max(1, height))
+				: renderWallpaper(gc);
+		tileConfiguration = gc;
+		return tile;
+	}
+
+	private BufferedImage renderWallpaper(GraphicsConfiguration gc) {
+		int imageWidth = Math.max(1, wallpaper.getWidth(null));
+		int imageHeight = Math.max(1, wallpaper.getHeight(null));
+		int across = (MIN_TILE + imageWidth - 1) / imageWidth;
+		int down = (MIN_TILE + imageHeight - 1) / imageHeight;
+		BufferedImage image = createImage(gc, imageWidth * across, imageHeight
+				* down);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(getColor());
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			for (int y = 0; y < down; y++) {
+				for (int x = 0; x < across; x++) {
+					g.drawImage(wallpaper, x * imageWidth, y * imageHeight, null);
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	private BufferedImage renderGradient(GraphicsConfiguration gc, int height) {
+		BufferedImage image = createImage(gc, GRADIENT_STRIP, height);
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setPaint(new GradientPaint(0, 0, gradientTop, 0, height,
+					gradientBottom));
+			g.fillRect(0, 0, GRADIENT_STRIP, height);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	private static BufferedImage createImage(GraphicsConfiguration gc,
+			int width, int height) {
+		if (gc == null) {
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+		return gc.createCompatibleImage(width, height, Transparency.OPAQUE);
+	}
+
+	private void discardTile() {
+		if (tile != null) {
+			tile.flush();
+			tile = null;
+			tileConfiguration = null;
+		}
+	}
+}
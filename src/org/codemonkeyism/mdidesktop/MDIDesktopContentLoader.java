@@ -0,0 +1,37 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Owns the executor that frame content is loaded on. Virtual threads are used
+ * when the running JVM has them, otherwise a cached pool of daemon threads.
+ *
+ * @author Dean
+ */
+final class MDIDesktopContentLoader {
+
+	private static final ExecutorService EXECUTOR = createExecutor();
+
+	private MDIDesktopContentLoader() {
+	}
+
+	static ExecutorService executor() {
+		return EXECUTOR;
+	}
+
+	private static ExecutorService createExecutor() {
+		try {
+			Method factory = Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (Exception e) {
+			// No virtual threads on this JVM
+		}
+		return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+				.setDaemon(true).setNameFormat("mdidesktop-loader-%d").build());
+	}
+}
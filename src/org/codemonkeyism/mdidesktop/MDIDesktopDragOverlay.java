@@ -0,0 +1,188 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+import javax.swing.JInternalFrame;
+import javax.swing.JLayeredPane;
+import javax.swing.UIManager;
+
+/**
+ * Stands in for a frame while it is dragged in outline or ghost mode. The
+ * frame stays where it is until the drag ends and only the overlay moves.
+ *
+ * An outline is four thin edges, each its own component, so a move repaints
+ * the strips the edges leave and enter rather than everything inside the
+ * outline. A ghost is a translucent picture of the frame taken as the drag
+ * starts; while it is up an <code>MDIDesktopFrame</code> paints itself from
+ * the same picture, so the damage the ghost leaves behind never makes the
+ * frame paint its content again.
+ *
+ * @author Dean
+ */
+class MDIDesktopDragOverlay {
+
+	private static final int EDGE = 2;
+	private static final float GHOST_ALPHA = 0.6f;
+
+	private final JLayeredPane desktop;
+	private final JInternalFrame frame;
+	private final Part[] parts;
+	private final BufferedImage image;
+	private final Rectangle bounds;
+
+	/**
+	 * Put an overlay over the frame
+	 *
+	 * @param desktop
+	 * @param frame
+	 * @param ghost
+	 *            true for a ghost, false for an outline
+	 */
+	MDIDesktopDragOverlay(JLayeredPane desktop, JInternalFrame frame,
+			boolean ghost) {
+		this.desktop = desktop;
+		this.frame = frame;
+		this.bounds = frame.getBounds();
+		this.image = ghost ? snapshot(frame) : null;
+
+		if (image != null) {
+			parts = new Part[] { new Ghost() };
+			if (frame instanceof MDIDesktopFrame) {
+				((MDIDesktopFrame) frame).setDragImage(image);
+			}
+		} else {
+			Color color = UIManager.getColor("controlDkShadow");
+			parts = new Part[4];
+			for (int i = 0; i < parts.length; i++) {
+				parts[i] = new Edge(color == null ? Color.DARK_GRAY : color);
+			}
+		}
+		for (Part part : parts) {
+			desktop.add(part, JLayeredPane.DRAG_LAYER);
+		}
+		layoutParts();
+	}
+
+	JInternalFrame getFrame() {
+		return frame;
+	}
+
+	boolean isGhost() {
+		return image != null;
+	}
+
+	/**
+	 * Move the overlay to where the frame is being dragged
+	 *
+	 * @param x
+	 * @param y
+	 */
+	void moveTo(int x, int y) {
+		if (x == bounds.x && y == bounds.y) {
+			return;
+		}
+		bounds.setLocation(x, y);
+		layoutParts();
+	}
+
+	/**
+	 * Take the overlay down
+	 *
+	 * @return where the frame should go
+	 */
+	Rectangle finish() {
+		for (Part part : parts) {
+			Rectangle r = part.getBounds();
+			desktop.remove(part);
+			desktop.repaint(r.x, r.y, r.width, r.height);
+		}
+		if (frame instanceof MDIDesktopFrame) {
+			((MDIDesktopFrame) frame).setDragImage(null);
+		}
+		if (image != null) {
+			image.flush();
+		}
+		return new Rectangle(bounds);
+	}
+
+	private void layoutParts() {
+		int x = bounds.x;
+		int y = bounds.y;
+		int w = bounds.width;
+		int h = bounds.height;
+		if (image != null) {
+			parts[0].setBounds(x, y, w, h);
+			return;
+		}
+		parts[0].setBounds(x, y, w, EDGE);
+		parts[1].setBounds(x, y + h - EDGE, w, EDGE);
+		parts[2].setBounds(x, y + EDGE, EDGE, Math.max(0, h - 2 * EDGE));
+		parts[3].setBounds(x + w - EDGE, y + EDGE, EDGE, Math.max(0,
+				h - 2 * EDGE));
+	}
+
+	private static BufferedImage snapshot(JInternalFrame frame) {
+		int width = Math.max(1, frame.getWidth());
+		int height = Math.max(1, frame.getHeight());
+		GraphicsConfiguration gc = frame.getGraphicsConfiguration();
+		BufferedImage image = gc == null ? new BufferedImage(width, height,
+				BufferedImage.TYPE_INT_ARGB) : gc.createCompatibleImage(width,
+				height);
+		Graphics2D g = image.createGraphics();
+		try {
+			frame.paint(g);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * A component of the overlay. Adding and removing these leaves the
+	 * desktop's size alone.
+	 */
+	static class Part extends JComponent {
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	private static class Edge extends Part {
+
+		private static final long serialVersionUID = 1L;
+
+		Edge(Color color) {
+			setBackground(color);
+			setOpaque(true);
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			g.setColor(getBackground());
+			g.fillRect(0, 0, getWidth(), getHeight());
+		}
+	}
+
+	private class Ghost extends Part {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			Graphics2D g2 = (Graphics2D) g.create();
+			try {
+				g2.setComposite(AlphaComposite.getInstance(
+						AlphaComposite.SRC_OVER, GHOST_ALPHA));
+				g2.drawImage(image, 0, 0, null);
+			} finally {
+				g2.dispose();
+			}
+		}
+	}
+}
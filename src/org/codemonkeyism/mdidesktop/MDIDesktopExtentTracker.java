@@ -0,0 +1,235 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Component;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import javax.swing.JInternalFrame;
+
+/**
+ * Keeps the furthest right and bottom edges of the desktop's frames up to
+ * date from move and resize events. Each update costs O(log n) and reading the
+ * extent costs O(1). A full scan of the desktop only happens after the tracker
+ * has been invalidated.
+ *
+ * Component events arrive after the change that caused them, so a resize pass
+ * that ran in between would have seen the old extent. The tracker therefore
+ * reports every change to the extent itself, and the desktop manager asks for
+ * another pass.
+ *
+ * @author Dean
+ */
+class MDIDesktopExtentTracker extends MDIDesktopFrameTracker {
+
+	private final EdgeHeap rightEdges = new EdgeHeap();
+	private final EdgeHeap bottomEdges = new EdgeHeap();
+
+	private final Runnable extentChanged;
+
+	private boolean valid = true;
+
+	/**
+	 * @param desktop
+	 * @param extentChanged
+	 *            run whenever a tracked change moves the furthest right or
+	 *            bottom edge
+	 */
+	MDIDesktopExtentTracker(MDIDesktopPane desktop, Runnable extentChanged) {
+		super(desktop);
+		this.extentChanged = extentChanged;
+	}
+
+	/**
+	 * Force the next extent query to rebuild from a full scan of the desktop
+	 */
+	void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * Get the largest right edge of any frame on the desktop
+	 *
+	 * @return maxRight
+	 */
+	int getMaxRight() {
+		validate();
+		return rightEdges.max();
+	}
+
+	/**
+	 * Get the largest bottom edge of any frame on the desktop
+	 *
+	 * @return maxBottom
+	 */
+	int getMaxBottom() {
+		validate();
+		return bottomEdges.max();
+	}
+
+	/**
+	 * How many frames are being tracked
+	 *
+	 * @return size
+	 */
+	int size() {
+		return rightEdges.size();
+	}
+
+	private void validate() {
+		if (valid && isInstalled()) {
+			return;
+		}
+		rightEdges.clear();
+		bottomEdges.clear();
+		for (JInternalFrame frame : desktop.getFrameRegistry()) {
+			update(frame);
+		}
+		valid = true;
+	}
+
+	private void update(JInternalFrame frame) {
+		rightEdges.put(frame, frame.getX() + frame.getWidth());
+		bottomEdges.put(frame, frame.getY() + frame.getHeight());
+	}
+
+	@Override
+	protected void frameTracked(JInternalFrame frame) {
+		int right = rightEdges.max();
+		int bottom = bottomEdges.max();
+		update(frame);
+		fireIfChanged(right, bottom);
+	}
+
+	@Override
+	protected void frameUntracked(JInternalFrame frame) {
+		int right = rightEdges.max();
+		int bottom = bottomEdges.max();
+		rightEdges.remove(frame);
+		bottomEdges.remove(frame);
+		fireIfChanged(right, bottom);
+	}
+
+	@Override
+	protected void frameBoundsChanged(JInternalFrame frame) {
+		int right = rightEdges.max();
+		int bottom = bottomEdges.max();
+		update(frame);
+		fireIfChanged(right, bottom);
+	}
+
+	private void fireIfChanged(int right, int bottom) {
+		// An invalid tracker is rebuilt before its extent is next read
+		if (valid && (right != rightEdges.max() || bottom != bottomEdges.max())) {
+			extentChanged.run();
+		}
+	}
+
+	/**
+	 * Indexed binary max-heap of edge positions. The index lets a component's
+	 * edge be changed or removed in O(log n) without searching for it.
+	 */
+	private static final class EdgeHeap {
+
+		private Component[] components = new Component[16];
+		private int[] edges = new int[16];
+		private int size;
+		private final Map<Component, Integer> positions = new IdentityHashMap<Component, Integer>();
+
+		int size() {
+			return size;
+		}
+
+		int max() {
+			return size == 0 ? 0 : edges[0];
+		}
+
+		void clear() {
+			Arrays.fill(components, 0, size, null);
+			size = 0;
+			positions.clear();
+		}
+
+		void put(Component c, int edge) {
+			Integer position = positions.get(c);
+			if (position == null) {
+				if (size == components.length) {
+					components = Arrays.copyOf(components, size * 2);
+					edges = Arrays.copyOf(edges, size * 2);
+				}
+				set(size, c, edge);
+				size++;
+				siftUp(size - 1);
+				return;
+			}
+			int i = position.intValue();
+			int old = edges[i];
+			edges[i] = edge;
+			if (edge > old) {
+				siftUp(i);
+			} else if (edge < old) {
+				siftDown(i);
+			}
+		}
+
+		void remove(Component c) {
+			Integer position = positions.remove(c);
+			if (position == null) {
+				return;
+			}
+			int i = position.intValue();
+			size--;
+			if (i == size) {
+				components[size] = null;
+				return;
+			}
+			int old = edges[i];
+			set(i, components[size], edges[size]);
+			components[size] = null;
+			if (edges[i] > old) {
+				siftUp(i);
+			} else {
+				siftDown(i);
+			}
+		}
+
+		private void siftUp(int i) {
+			Component c = components[i];
+			int edge = edges[i];
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (edges[parent] >= edge) {
+					break;
+				}
+				set(i, components[parent], edges[parent]);
+				i = parent;
+			}
+			set(i, c, edge);
+		}
+
+		private void siftDown(int i) {
+			Component c = components[i];
+			int edge = edges[i];
+			int half = size >>> 1;
+			while (i < half) {
+				int child = (i << 1) + 1;
+				int right = child + 1;
+				if (right < size && edges[right] > edges[child]) {
+					child = right;
+				}
+				if (edge >= edges[child]) {
+					break;
+				}
+				set(i, components[child], edges[child]);
+				i = child;
+			}
+			set(i, c, edge);
+		}
+
+		private void set(int i, Component c, int edge) {
+			components[i] = c;
+			edges[i] = edge;
+			positions.put(c, Integer.valueOf(i));
+		}
+	}
+}
@@ -1,27 +1,45 @@
 package org.codemonkeyism.mdidesktop;
 
+import static com.google.common.base.Preconditions.checkState;
+
+import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.Container;
 import java.awt.Cursor;
 import java.awt.FocusTraversalPolicy;
 import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.event.KeyAdapter;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.awt.image.VolatileImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyVetoException;
 import java.beans.VetoableChangeListener;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiConsumer;
 
 import javax.swing.JComponent;
 import javax.swing.JDesktopPane;
 import javax.swing.JInternalFrame;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.SwingConstants;
 import javax.swing.SwingUtilities;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
 
+import org.codemonkeyism.mdidesktop.MDIDesktopMetrics.Operation;
+
 /**
  * An extended <code>JInternalFrame</code> that provides modality in a
  * child/parent hierarchy
@@ -32,15 +50,46 @@ public class MDIDesktopFrame extends JInternalFrame {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final MDIDesktopMetrics METRICS = MDIDesktopMetrics.getInstance();
+
+	/** Tint painted over a frame while a child frame blocks it */
+	private static final Color GLASS_PANE_OVERLAY = new Color(255, 255, 255, 100);
+
 	protected JDesktopPane desktopPane;
 	protected JComponent parent;
 	protected MDIDesktopFrame childFrame;
+	private MDIDesktopModalStack modalStack;
 	protected JComponent focusOwner;
 	private boolean wasCloseable;
 
 	private boolean glassPaneLocked = false;
 
 	protected Object returnValue;
+	private CompletableFuture<Object> modalResult;
+
+	private ContentFactory contentFactory;
+	private boolean virtualized;
+
+	private ContentLoadTask contentLoad;
+	private Container loadingContentPane;
+
+	private volatile long paintCostNanos;
+	private Image dragImage;
+
+	/**
+	 * Builds the content pane of a frame. Frames that register one can have
+	 * their content released while they are scrolled out of view and rebuilt
+	 * when they come back.
+	 */
+	public interface ContentFactory {
+
+		/**
+		 * Build a fresh content pane
+		 * 
+		 * @return contentPane
+		 */
+		Container createContent();
+	}
 
 	public MDIDesktopFrame(JComponent parent) {
 		this(parent, null);
@@ -113,19 +162,29 @@ public class MDIDesktopFrame extends JInternalFrame {
 	}
 
 	/**
-	 * Give me a child
+	 * Give me a child. The child blocks this frame from when it is shown until
+	 * it is closed, and several children may be open at once. Passing null
+	 * cuts this frame loose from all its open children.
 	 * 
 	 * @param childFrame
 	 */
 	public void setChildFrame(MDIDesktopFrame childFrame) {
-		if (hasChildFrame() && childFrame != null) {
-			System.out.println("We already have a child!");
+		if (childFrame == null) {
+			if (modalStack != null && modalStack.releaseChildren(this)) {
+				childClosing();
+			}
+			return;
+		}
+		if (childFrame.parent != this) {
+			childFrame.setParentFrame(this);
+		}
+		if (childFrame.isVisible() && !childFrame.isClosed()) {
+			openModalChild(childFrame);
 		}
-		this.childFrame = childFrame;
 	}
 
 	/**
-	 * Get me my child
+	 * Get me my child: the most recently opened of my open children
 	 * 
 	 * @return childFrame
 	 */
@@ -134,12 +193,56 @@ public class MDIDesktopFrame extends JInternalFrame {
 	}
 
 	/**
-	 * Do I have any children?
+	 * Do I have any children? A frame with a child open is blocked.
 	 * 
 	 * @return hasChildFrame
 	 */
 	public boolean hasChildFrame() {
-		return (childFrame != null);
+		return modalStack != null && modalStack.isBlocked(this);
+	}
+
+	/**
+	 * Get the modal stack of the desktop this frame is on
+	 * 
+	 * @return modalStack, or null if the frame is not on a desktop
+	 */
+	public MDIDesktopModalStack getModalStack() {
+		if (modalStack == null) {
+			JDesktopPane desktop = getDesktopPane();
+			if (desktop == null) {
+				desktop = desktopPane;
+			}
+			if (desktop != null) {
+				modalStack = MDIDesktopModalStack.forDesktop(desktop);
+			}
+		}
+		return modalStack;
+	}
+
+	private void openModalChild(MDIDesktopFrame child) {
+		MDIDesktopModalStack stack = getModalStack();
+		if (stack == null) {
+			stack = child.getModalStack();
+		}
+		if (stack == null) {
+			// Neither frame is on a desktop yet
+			return;
+		}
+		modalStack = stack;
+		child.modalStack = stack;
+		if (stack.open(this, child)) {
+			childOpening();
+		}
+	}
+
+	private void closeModal() {
+		if (modalStack == null) {
+			return;
+		}
+		MDIDesktopFrame owner = modalStack.close(this);
+		if (owner != null) {
+			owner.childClosing();
+		}
 	}
 
 	protected void addFrameVetoListener() {
@@ -153,17 +256,15 @@ public class MDIDesktopFrame extends JInternalFrame {
 						setIcon(false);
 					}
 					if (hasChildFrame()) {
-						childFrame.setSelected(true);
-						if (childFrame.isIcon()) {
-							childFrame.setIcon(false);
+						// Straight to the top of the modal chain; that frame
+						// is not blocked, so this goes no further
+						MDIDesktopFrame top = modalStack.getTopModal(MDIDesktopFrame.this);
+						if (top.isIcon()) {
+							top.setIcon(false);
 						}
+						top.setSelected(true);
 						throw new PropertyVetoException("no!", evt);
 					}
-				} else if (evt.getPropertyName().equals(JInternalFrame.IS_ICON_PROPERTY)
-						&& evt.getNewValue().equals(Boolean.TRUE)) {
-					if (getParentFrame() instanceof MDIDesktopFrame) {
-						((MDIDesktopFrame) getParentFrame()).setIcon(true);
-					}
 				}
 			}
 		});
@@ -178,23 +279,16 @@ public class MDIDesktopFrame extends JInternalFrame {
 
 			@Override
 			public void internalFrameIconified(InternalFrameEvent e) {
-				if (hasChildFrame()) {
-					try {
-						childFrame.setIcon(true);
-					} catch (PropertyVetoException e1) {
-						// Do nothing
-					}
+				// A modal group is iconified and restored as one
+				if (modalStack != null) {
+					modalStack.setGroupIcon(MDIDesktopFrame.this, true);
 				}
 			}
 
 			@Override
 			public void internalFrameDeiconified(InternalFrameEvent e) {
-				if (getParentFrame() instanceof MDIDesktopFrame) {
-					try {
-						((MDIDesktopFrame) getParentFrame()).setIcon(false);
-					} catch (PropertyVetoException e1) {
-						// Do nothing
-					}
+				if (modalStack != null) {
+					modalStack.setGroupIcon(MDIDesktopFrame.this, false);
 				}
 			}
 
@@ -224,18 +318,10 @@ public class MDIDesktopFrame extends JInternalFrame {
 			}
 
 			@Override
-			public void internalFrameClosing(InternalFrameEvent e) {
-				if (parent != null && parent instanceof MDIDesktopFrame) {
-					SwingUtilities.invokeLater(new Runnable() {
-						@Override
-						public void run() {
-							MDIDesktopFrame mdiFrame = (MDIDesktopFrame) parent;
-							if (mdiFrame.hasChildFrame() && mdiFrame.childFrame.isClosed()) {
-								((MDIDesktopFrame) parent).childClosing();
-							}
-						}
-					});
-				}
+			public void internalFrameClosed(InternalFrameEvent e) {
+				cancelContentLoad();
+				closeModal();
+				completeModalResult();
 			}
 		});
 	}
@@ -245,64 +331,425 @@ public class MDIDesktopFrame extends JInternalFrame {
 	 * input again with no glasspane visible
 	 */
 	protected void childClosing() {
-		setClosable(wasCloseable);
-		if (focusOwner != null) {
-			java.awt.EventQueue.invokeLater(new Runnable() {
+		long start = METRICS.begin(Operation.MODAL_CLOSE);
+		try {
+			setClosable(wasCloseable);
+			if (focusOwner != null) {
+				java.awt.EventQueue.invokeLater(new Runnable() {
 
-				@Override
-				public void run() {
-					try {
-						moveToFront();
-						setSelected(true);
-						if (!glassPaneLocked) {
-							focusOwner.grabFocus();
-						}
-					} catch (PropertyVetoException ex) {
-						// This should only happen in the event that one child
-						// frame is closing and another is being opened
-						// immediately
-						if (hasChildFrame()) {
-							try {
-								childFrame.setSelected(true);
-							} catch (PropertyVetoException e) {
-								// Do nothing
+					@Override
+					public void run() {
+						try {
+							moveToFront();
+							setSelected(true);
+							if (!glassPaneLocked) {
+								focusOwner.grabFocus();
+							}
+						} catch (PropertyVetoException ex) {
+							// This should only happen in the event that one child
+							// frame is closing and another is being opened
+							// immediately
+							if (hasChildFrame()) {
+								MDIDesktopFrame top = modalStack.getTopModal(MDIDesktopFrame.this);
+								try {
+									top.setSelected(true);
+								} catch (PropertyVetoException e) {
+									// Do nothing
+								}
+								top.moveToFront();
+								focusOwner = top;
 							}
-							childFrame.moveToFront();
-							focusOwner = childFrame;
 						}
 					}
+				});
+				if (!glassPaneLocked) {
+					focusOwner.grabFocus();
 				}
-			});
-			if (!glassPaneLocked) {
-				focusOwner.grabFocus();
 			}
+		} finally {
+			METRICS.end(Operation.MODAL_CLOSE, start);
 		}
-		setChildFrame(null);
 	}
 
 	/**
 	 * Method to handle child opening and becoming visible.
 	 */
 	protected void childOpening() {
-		// record the present focused component
-		wasCloseable = isClosable();
-		setClosable(false);
-		focusOwner = (JComponent) getFocusOwner();
-		grabFocus();
-		getGlassPane().setVisible(true);
-		getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		long start = METRICS.begin(Operation.MODAL_OPEN);
+		try {
+			// record the present focused component
+			wasCloseable = isClosable();
+			setClosable(false);
+			focusOwner = (JComponent) getFocusOwner();
+			grabFocus();
+			getGlassPane().setVisible(true);
+			getGlassPane().setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+		} finally {
+			METRICS.end(Operation.MODAL_OPEN, start);
+		}
 	}
 
 	@Override
 	public void show() {
-		if (parent != null && parent instanceof MDIDesktopFrame) {
+		if (parent instanceof MDIDesktopFrame && !isVisible()) {
 			// Need to inform parent its about to lose its focus due
 			// to child opening
-			((MDIDesktopFrame) parent).childOpening();
+			((MDIDesktopFrame) parent).openModalChild(this);
 		}
 		super.show();
 	}
 
+	/**
+	 * Show this frame and get its result without waiting for it. The future
+	 * completes with the return value on the event dispatch thread as soon as
+	 * the frame is closed, so stages chained onto it without an executor also
+	 * run on the event dispatch thread. Cancelling the future closes the
+	 * frame.
+	 * 
+	 * A frame with a parent frame blocks that parent while it is open, as it
+	 * always has; nothing waits or runs a nested event loop.
+	 * 
+	 * <pre>
+	 * confirmFrame.showModal().thenCompose(answer -&gt; detailsFrame.showModal())
+	 * 		.thenAccept(details -&gt; submit(details));
+	 * </pre>
+	 * 
+	 * @return the frame's return value, once closed
+	 */
+	public CompletableFuture<Object> showModal() {
+		if (modalResult != null) {
+			return modalResult;
+		}
+		checkState(!isClosed(), "Frame has been closed");
+
+		final CompletableFuture<Object> result = new CompletableFuture<Object>();
+		modalResult = result;
+		result.whenComplete(new BiConsumer<Object, Throwable>() {
+			@Override
+			public void accept(Object value, Throwable failure) {
+				if (result.isCancelled()) {
+					closeCancelledModal(result);
+				}
+			}
+		});
+
+		if (getParent() == null && desktopPane != null) {
+			addToDesktop();
+		}
+		setVisible(true);
+		try {
+			setSelected(true);
+		} catch (PropertyVetoException e) {
+			// A child of our own has the selection
+		}
+		return result;
+	}
+
+	/**
+	 * Put this frame on its desktop the way <code>addFrame()</code> does, so it
+	 * is placed, counted and has its content loaded like any other frame
+	 */
+	private void addToDesktop() {
+		if (!(desktopPane instanceof MDIDesktopPane)) {
+			desktopPane.add(this);
+			return;
+		}
+		MDIDesktopPane desktop = (MDIDesktopPane) desktopPane;
+		MDIDesktopAbstractView view = desktop.getView();
+		if (view != null) {
+			view.addFrame(this);
+			return;
+		}
+		if (hasAsyncContent()) {
+			loadContentAsync();
+		}
+		desktop.add((JInternalFrame) this);
+	}
+
+	/**
+	 * Is a <code>showModal()</code> future waiting for this frame to close?
+	 * 
+	 * @return showingModal
+	 */
+	public boolean isShowingModal() {
+		return modalResult != null;
+	}
+
+	public Object getReturnValue() {
+		return returnValue;
+	}
+
+	/**
+	 * Set the value handed to <code>showModal()</code> callers on close
+	 * 
+	 * @param returnValue
+	 */
+	protected void setReturnValue(Object returnValue) {
+		this.returnValue = returnValue;
+	}
+
+	/**
+	 * Set the return value and close the frame
+	 * 
+	 * @param returnValue
+	 */
+	public void closeWithResult(Object returnValue) {
+		this.returnValue = returnValue;
+		try {
+			setClosed(true);
+		} catch (PropertyVetoException e) {
+			// Stay open; the future completes when the frame does close
+		}
+	}
+
+	private void completeModalResult() {
+		CompletableFuture<Object> result = modalResult;
+		if (result != null) {
+			modalResult = null;
+			result.complete(returnValue);
+		}
+	}
+
+	private void closeCancelledModal(final CompletableFuture<Object> result) {
+		if (!SwingUtilities.isEventDispatchThread()) {
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					closeCancelledModal(result);
+				}
+			});
+			return;
+		}
+		if (modalResult != result) {
+			return;
+		}
+		modalResult = null;
+		if (!isClosed()) {
+			try {
+				setClosed(true);
+			} catch (PropertyVetoException e) {
+				// Leave it to the user to close
+			}
+		}
+	}
+
+	/**
+	 * Does this frame load its content in the background? Frames that return
+	 * true have <code>loadContent()</code> run off the event dispatch thread
+	 * when they are added to the desktop.
+	 * 
+	 * @return asyncContent
+	 */
+	protected boolean hasAsyncContent() {
+		return false;
+	}
+
+	/**
+	 * Build the frame's data and models. Runs on a background thread, so it
+	 * must not touch Swing components.
+	 * 
+	 * @return content handed to <code>contentLoaded</code>
+	 * @throws Exception
+	 */
+	protected Object loadContent() throws Exception {
+		return null;
+	}
+
+	/**
+	 * Install the loaded content. Runs on the event dispatch thread once
+	 * <code>loadContent()</code> has finished, unless the frame was closed
+	 * first.
+	 * 
+	 * @param content
+	 */
+	protected void contentLoaded(Object content) {
+	}
+
+	/**
+	 * Called on the event dispatch thread if <code>loadContent()</code> threw
+	 * 
+	 * @param cause
+	 */
+	protected void contentLoadFailed(Throwable cause) {
+		cause.printStackTrace();
+	}
+
+	/**
+	 * Build the placeholder shown while content is loading
+	 * 
+	 * @return placeholder
+	 */
+	protected Container createLoadingPlaceholder() {
+		JPanel placeholder = new JPanel(new BorderLayout());
+		placeholder.add(new JLabel("Loading...", SwingConstants.CENTER),
+				BorderLayout.CENTER);
+		return placeholder;
+	}
+
+	/**
+	 * Show the loading placeholder and run <code>loadContent()</code> in the
+	 * background. The real content pane comes back, and
+	 * <code>contentLoaded</code> is called, in a single step on the event
+	 * dispatch thread. A virtualized frame gets its real content back first,
+	 * and is not virtualized again until the load is over.
+	 */
+	public void loadContentAsync() {
+		if (contentLoad != null) {
+			return;
+		}
+		if (virtualized) {
+			devirtualize();
+		}
+		if (loadingContentPane == null) {
+			loadingContentPane = getContentPane();
+		}
+		setContentPane(createLoadingPlaceholder());
+
+		ContentLoadTask task = new ContentLoadTask();
+		contentLoad = task;
+		MDIDesktopContentLoader.executor().execute(task);
+	}
+
+	/**
+	 * Is content still loading?
+	 * 
+	 * @return loading
+	 */
+	public boolean isContentLoading() {
+		return contentLoad != null;
+	}
+
+	/**
+	 * Abandon a content load that has not finished yet. The loading
+	 * placeholder stays in place until the content is loaded again.
+	 */
+	public void cancelContentLoad() {
+		if (contentLoad != null) {
+			contentLoad.cancel(true);
+			contentLoad = null;
+		}
+	}
+
+	/**
+	 * Runs <code>loadContent()</code> and hands the result back to the event
+	 * dispatch thread
+	 */
+	private class ContentLoadTask extends FutureTask<Object> {
+
+		ContentLoadTask() {
+			super(new Callable<Object>() {
+				@Override
+				public Object call() throws Exception {
+					return loadContent();
+				}
+			});
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) {
+				return;
+			}
+			SwingUtilities.invokeLater(new Runnable() {
+				@Override
+				public void run() {
+					publishContent(ContentLoadTask.this);
+				}
+			});
+		}
+	}
+
+	private void publishContent(FutureTask<Object> task) {
+		if (task != contentLoad || task.isCancelled() || isClosed()) {
+			return;
+		}
+		contentLoad = null;
+		if (!virtualized) {
+			setContentPane(loadingContentPane);
+		}
+		loadingContentPane = null;
+		try {
+			contentLoaded(task.get());
+		} catch (ExecutionException e) {
+			contentLoadFailed(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Put a closed frame back into the state it was built in, so that a frame
+	 * pool can hand it out again. A parent this frame was blocking is released
+	 * first. The frame is reopened with <code>setClosed(false)</code>, so
+	 * listeners see it happen and can veto it.
+	 * 
+	 * @return false if reopening was vetoed, in which case the frame stays
+	 *         closed and should not be reused
+	 */
+	boolean recycle() {
+		checkState(isClosed(), "Only closed frames can be recycled");
+		checkState(!hasChildFrame(), "Frame still has a child frame open");
+
+		closeModal();
+
+		cancelContentLoad();
+		if (loadingContentPane != null) {
+			setContentPane(loadingContentPane);
+			loadingContentPane = null;
+		}
+		devirtualize();
+		try {
+			setIcon(false);
+			setMaximum(false);
+		} catch (PropertyVetoException e) {
+			// Not vetoed by anything of ours once the frame is closed
+		}
+
+		completeModalResult();
+		focusOwner = null;
+		returnValue = null;
+		glassPaneLocked = false;
+		getGlassPane().setVisible(false);
+		getGlassPane().setCursor(null);
+		setParentFrame(null);
+		modalStack = null;
+		try {
+			setClosed(false);
+		} catch (PropertyVetoException e) {
+			return false;
+		}
+
+		resetForReuse();
+		return true;
+	}
+
+	/**
+	 * Give a recycled frame its new parent, linking it in as the parent's
+	 * modal child in the same way the constructor does
+	 * 
+	 * @param parent
+	 */
+	void adopt(JComponent parent) {
+		setParentFrame(parent);
+		if (parent instanceof MDIDesktopFrame) {
+			((MDIDesktopFrame) parent).setChildFrame(this);
+		}
+	}
+
+	/**
+	 * Called when a closed frame goes back into a frame pool. Subclasses that
+	 * are pooled should clear any per-use state here, such as field values
+	 * and listeners added for the last use, so the frame looks new the next
+	 * time it is handed out.
+	 * 
+	 * Note that a reused frame is not sent a second
+	 * <code>internalFrameOpened</code> event.
+	 */
+	protected void resetForReuse() {
+	}
+
 	/**
 	 * Set the location of this frame relative to the parent frame
 	 * 
@@ -321,6 +768,77 @@ public class MDIDesktopFrame extends JInternalFrame {
 		newX = newX < 0 ? 0 : newX;
 
 		setLocation(newX, newY);
+		if (desktopPane instanceof MDIDesktopPane) {
+			((MDIDesktopPane) desktopPane).getFrameRevealer().frameMoved(this);
+		}
+	}
+
+	/**
+	 * Register the factory that builds this frame's content. The factory is
+	 * only used once the frame has been virtualized, so the content built in
+	 * the constructor is still the first one shown.
+	 * 
+	 * @param contentFactory
+	 */
+	protected void setContentFactory(ContentFactory contentFactory) {
+		this.contentFactory = contentFactory;
+	}
+
+	/**
+	 * Can this frame have its content released while off screen?
+	 * 
+	 * @return virtualizable
+	 */
+	public boolean isVirtualizable() {
+		return contentFactory != null;
+	}
+
+	/**
+	 * Is the real content currently swapped out for a placeholder?
+	 * 
+	 * @return virtualized
+	 */
+	public boolean isVirtualized() {
+		return virtualized;
+	}
+
+	/**
+	 * Swap the content pane for a lightweight placeholder and let the real one
+	 * be garbage collected. Does nothing while content is loading, as the load
+	 * is about to put the real content pane back.
+	 */
+	void virtualize() {
+		if (virtualized || contentFactory == null || contentLoad != null) {
+			return;
+		}
+		virtualized = true;
+		// The content pane held back by an abandoned load goes too
+		loadingContentPane = null;
+		setContentPane(createVirtualPlaceholder());
+	}
+
+	/**
+	 * Rebuild the real content pane from the content factory. Does nothing
+	 * while content is loading.
+	 */
+	void devirtualize() {
+		if (!virtualized || contentLoad != null) {
+			return;
+		}
+		virtualized = false;
+		setContentPane(contentFactory.createContent());
+		revalidate();
+		repaint();
+	}
+
+	/**
+	 * Build the placeholder shown while the frame is virtualized. Subclasses
+	 * can override to show something closer to their real content.
+	 * 
+	 * @return placeholder
+	 */
+	protected Container createVirtualPlaceholder() {
+		return new JPanel();
 	}
 
 	/**
@@ -336,6 +854,9 @@ public class MDIDesktopFrame extends JInternalFrame {
 
 		private MDIDesktopFrame modalFrame;
 
+		private boolean overlayCached;
+		private VolatileImage snapshot;
+
 		public ModalInternalGlassPane(MDIDesktopFrame frame) {
 			modalFrame = frame;
 			addMouseListener(new MouseAdapter() {
@@ -387,16 +908,241 @@ public class MDIDesktopFrame extends JInternalFrame {
 			if (!value && glassPaneLocked) {
 				return;
 			}
-			super.setVisible(value);
+			if (value == isVisible()) {
+				super.setVisible(value);
+				return;
+			}
+			// Whatever is under us has changed since the last snapshot
+			discardSnapshot();
+			Operation operation = value ? Operation.GLASS_PANE_SHOW
+					: Operation.GLASS_PANE_HIDE;
+			long start = METRICS.begin(operation);
+			try {
+				super.setVisible(value);
+			} finally {
+				METRICS.end(operation, start);
+			}
 		}
 
 		@Override
 		public void paint(Graphics g) {
+			MDIDesktopPaintProfiler profiler = getPaintProfiler();
+			if (profiler == null) {
+				paintOverlay(g);
+				return;
+			}
+			long start = profiler.begin();
+			try {
+				paintOverlay(g);
+			} finally {
+				profiler.end(MDIDesktopFrame.this,
+						MDIDesktopPaintProfiler.Phase.GLASS_PANE, g, start);
+			}
+		}
+
+		private void paintOverlay(Graphics g) {
 			super.paint(g);
-			g.setColor(new Color(255, 255, 255, 100));
-			g.fillRect(0, 0, getWidth(), getHeight());
+			if (overlayCached) {
+				boolean wasOpaque = isOpaque();
+				if (paintSnapshot(g)) {
+					return;
+				}
+				discardSnapshot();
+				if (wasOpaque) {
+					// Nothing under us was painted for the tint to go over
+					repaint();
+				}
+			}
+			Rectangle clip = g.getClipBounds();
+			g.setColor(GLASS_PANE_OVERLAY);
+			if (clip == null) {
+				g.fillRect(0, 0, getWidth(), getHeight());
+			} else {
+				g.fillRect(clip.x, clip.y, clip.width, clip.height);
+			}
+		}
+
+		/**
+		 * Opaque only while there is a snapshot to paint, so that what is
+		 * under us is painted for the plain tint to go over otherwise
+		 */
+		@Override
+		public boolean isOpaque() {
+			return overlayCached && snapshot != null && !snapshot.contentsLost();
+		}
+
+		void setOverlayCached(boolean cached) {
+			overlayCached = cached;
+			discardSnapshot();
+			repaint();
+		}
+
+		void discardSnapshot() {
+			if (snapshot != null) {
+				snapshot.flush();
+				snapshot = null;
+			}
+		}
+
+		/**
+		 * Copy the tinted snapshot of the blocked content, taking it first if
+		 * need be
+		 * 
+		 * @param g
+		 * @return false if no snapshot could be made
+		 */
+		private boolean paintSnapshot(Graphics g) {
+			GraphicsConfiguration gc = getGraphicsConfiguration();
+			int width = getWidth();
+			int height = getHeight();
+			if (gc == null || width <= 0 || height <= 0) {
+				return false;
+			}
+			for (int attempt = 0; attempt < 3; attempt++) {
+				if (snapshot == null || snapshot.getWidth() != width
+						|| snapshot.getHeight() != height) {
+					discardSnapshot();
+					snapshot = gc.createCompatibleVolatileImage(width, height);
+					renderSnapshot();
+				} else {
+					int status = snapshot.validate(gc);
+					if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+						discardSnapshot();
+						continue;
+					}
+					if (status == VolatileImage.IMAGE_RESTORED) {
+						renderSnapshot();
+					}
+				}
+				g.drawImage(snapshot, 0, 0, null);
+				if (!snapshot.contentsLost()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private void renderSnapshot() {
+			Graphics2D g2 = snapshot.createGraphics();
+			try {
+				g2.setColor(getBackground() == null ? Color.WHITE
+						: getBackground());
+				g2.fillRect(0, 0, getWidth(), getHeight());
+				// The glass pane sits over the whole root pane, so the layered
+				// pane's coordinates line up with ours
+				getRootPane().getLayeredPane().paint(g2);
+				g2.setColor(GLASS_PANE_OVERLAY);
+				g2.fillRect(0, 0, getWidth(), getHeight());
+			} finally {
+				g2.dispose();
+			}
+		}
+
+	}
+
+	/**
+	 * Paint the frame, timing it. While the frame is being dragged as a ghost
+	 * it paints the picture the ghost was made from instead.
+	 */
+	@Override
+	public void paint(Graphics g) {
+		if (dragImage != null) {
+			g.drawImage(dragImage, 0, 0, null);
+			return;
+		}
+		long start = System.nanoTime();
+		super.paint(g);
+		long elapsed = System.nanoTime() - start;
+
+		// Scale a partial paint up to the whole frame, but ignore slivers such
+		// as a caret blink, which are all overhead
+		long area = (long) getWidth() * getHeight();
+		Rectangle clip = g.getClipBounds();
+		if (clip != null && area > 0) {
+			Rectangle painted = clip.intersection(new Rectangle(0, 0,
+					getWidth(), getHeight()));
+			long paintedArea = painted.isEmpty() ? 0 : (long) painted.width
+					* painted.height;
+			if (paintedArea * 4 < area) {
+				return;
+			}
+			elapsed = elapsed * area / paintedArea;
 		}
+		paintCostNanos = elapsed;
+	}
+
+	@Override
+	protected void paintComponent(Graphics g) {
+		MDIDesktopPaintProfiler profiler = getPaintProfiler();
+		if (profiler == null) {
+			super.paintComponent(g);
+			return;
+		}
+		long start = profiler.begin();
+		try {
+			super.paintComponent(g);
+		} finally {
+			profiler.end(this, MDIDesktopPaintProfiler.Phase.COMPONENT, g, start);
+		}
+	}
+
+	@Override
+	protected void paintChildren(Graphics g) {
+		MDIDesktopPaintProfiler profiler = getPaintProfiler();
+		if (profiler == null) {
+			super.paintChildren(g);
+			return;
+		}
+		long start = profiler.begin();
+		try {
+			super.paintChildren(g);
+		} finally {
+			profiler.end(this, MDIDesktopPaintProfiler.Phase.CHILDREN, g, start);
+		}
+	}
+
+	private MDIDesktopPaintProfiler getPaintProfiler() {
+		return desktopPane instanceof MDIDesktopPane ? ((MDIDesktopPane) desktopPane)
+				.getPaintProfiler() : null;
+	}
+
+	/**
+	 * How long the frame takes to paint, from its last paint of at least a
+	 * quarter of its area, scaled up to the whole frame
+	 * 
+	 * @return nanoseconds, 0 before the first paint
+	 */
+	public long getPaintCostNanos() {
+		return paintCostNanos;
+	}
+
+	/**
+	 * Paint from this picture instead of the frame's content, or go back to
+	 * painting normally if null. Used while the frame is dragged as a ghost.
+	 * 
+	 * @param image
+	 */
+	void setDragImage(Image image) {
+		dragImage = image;
+	}
+
+	/**
+	 * Paint the blocked frame from a tinted snapshot rather than painting its
+	 * content and the tint every time. The snapshot is taken when the glass
+	 * pane is shown, so content that updates while the frame is blocked will
+	 * look frozen until the child frame closes.
+	 * 
+	 * @param cached
+	 */
+	public void setGlassPaneOverlayCached(boolean cached) {
+		if (getGlassPane() instanceof ModalInternalGlassPane) {
+			((ModalInternalGlassPane) getGlassPane()).setOverlayCached(cached);
+		}
+	}
 
+	public boolean isGlassPaneOverlayCached() {
+		return getGlassPane() instanceof ModalInternalGlassPane
+				&& ((ModalInternalGlassPane) getGlassPane()).overlayCached;
 	}
 
 	public void lockGlassPane(boolean value) {
@@ -0,0 +1,307 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JInternalFrame;
+import javax.swing.event.InternalFrameAdapter;
+import javax.swing.event.InternalFrameEvent;
+
+/**
+ * The frames on an <code>MDIDesktopPane</code> in most recently activated
+ * order, with an index over their titles for the window switcher.
+ *
+ * The order is a linked list: an activation moves one entry to the front in
+ * constant time. Titles are indexed by every three character run they
+ * contain, so a filter of three or more characters only looks at the frames
+ * that share its rarest run instead of every frame on the desktop.
+ *
+ * Get one from <code>MDIDesktopPane.getFrameIndex()</code>.
+ *
+ * @author Dean
+ */
+public class MDIDesktopFrameIndex {
+
+	private static final int GRAM = 3;
+
+	private final Tracker tracker;
+	private final Map<JInternalFrame, Entry> entries = new IdentityHashMap<JInternalFrame, Entry>();
+	private final Map<Long, Set<Entry>> grams = new HashMap<Long, Set<Entry>>();
+
+	// Most recently activated first
+	private Entry head;
+	private Entry tail;
+	private long activations;
+	private long additions;
+
+	private final InternalFrameAdapter activationListener = new InternalFrameAdapter() {
+		@Override
+		public void internalFrameActivated(InternalFrameEvent e) {
+			activated(e.getInternalFrame());
+		}
+	};
+
+	private final PropertyChangeListener titleListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent evt) {
+			Entry entry = entries.get(evt.getSource());
+			if (entry != null) {
+				unindex(entry);
+				entry.title = normalise(entry.frame.getTitle());
+				index(entry);
+			}
+		}
+	};
+
+	MDIDesktopFrameIndex(MDIDesktopPane desktop) {
+		tracker = new Tracker(desktop);
+		tracker.install();
+	}
+
+	/**
+	 * How many frames are indexed
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Every frame, most recently activated first
+	 *
+	 * @return frames
+	 */
+	public List<JInternalFrame> getRecentFrames() {
+		List<JInternalFrame> frames = new ArrayList<JInternalFrame>(
+				entries.size());
+		for (Entry e = head; e != null; e = e.next) {
+			frames.add(e.frame);
+		}
+		return frames;
+	}
+
+	/**
+	 * The frames whose titles contain the filter, ignoring case. Titles that
+	 * start with the filter, or have a word that does, come first; each group
+	 * is in most recently activated order.
+	 *
+	 * @param filter
+	 * @return frames
+	 */
+	public List<JInternalFrame> search(String filter) {
+		String query = normalise(filter).trim();
+		if (query.isEmpty()) {
+			return getRecentFrames();
+		}
+
+		List<Entry> matches = new ArrayList<Entry>();
+		if (query.length() < GRAM) {
+			for (Entry e = head; e != null; e = e.next) {
+				if (e.title.contains(query)) {
+					matches.add(e);
+				}
+			}
+		} else {
+			Set<Entry> candidates = null;
+			for (int i = 0; i + GRAM <= query.length(); i++) {
+				Set<Entry> posting = grams.get(gramAt(query, i));
+				if (posting == null) {
+					return Collections.emptyList();
+				}
+				if (candidates == null || posting.size() < candidates.size()) {
+					candidates = posting;
+				}
+			}
+			for (Entry e : candidates) {
+				if (e.title.contains(query)) {
+					matches.add(e);
+				}
+			}
+			Collections.sort(matches, RECENT_FIRST);
+		}
+
+		List<JInternalFrame> frames = new ArrayList<JInternalFrame>(
+				matches.size());
+		for (Entry e : matches) {
+			if (startsWord(e.title, query)) {
+				frames.add(e.frame);
+			}
+		}
+		for (Entry e : matches) {
+			if (!startsWord(e.title, query)) {
+				frames.add(e.frame);
+			}
+		}
+		return frames;
+	}
+
+	private void activated(JInternalFrame frame) {
+		Entry entry = entries.get(frame);
+		if (entry == null) {
+			return;
+		}
+		entry.lastActivated = ++activations;
+		if (entry == head) {
+			return;
+		}
+		unlink(entry);
+		entry.next = head;
+		head.previous = entry;
+		head = entry;
+	}
+
+	private void add(JInternalFrame frame) {
+		Entry entry = new Entry(frame, ++additions);
+		entries.put(frame, entry);
+		// Not activated yet, so least recent
+		entry.previous = tail;
+		if (tail == null) {
+			head = entry;
+		} else {
+			tail.next = entry;
+		}
+		tail = entry;
+		index(entry);
+		frame.addInternalFrameListener(activationListener);
+		frame.addPropertyChangeListener(JInternalFrame.TITLE_PROPERTY,
+				titleListener);
+		if (frame.isSelected()) {
+			activated(frame);
+		}
+	}
+
+	private void remove(JInternalFrame frame) {
+		Entry entry = entries.remove(frame);
+		if (entry == null) {
+			return;
+		}
+		frame.removeInternalFrameListener(activationListener);
+		frame.removePropertyChangeListener(JInternalFrame.TITLE_PROPERTY,
+				titleListener);
+		unindex(entry);
+		unlink(entry);
+	}
+
+	private void unlink(Entry entry) {
+		if (entry.previous == null) {
+			head = entry.next;
+		} else {
+			entry.previous.next = entry.next;
+		}
+		if (entry.next == null) {
+			tail = entry.previous;
+		} else {
+			entry.next.previous = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+	}
+
+	private void index(Entry entry) {
+		String title = entry.title;
+		for (int i = 0; i + GRAM <= title.length(); i++) {
+			Long gram = gramAt(title, i);
+			Set<Entry> posting = grams.get(gram);
+			if (posting == null) {
+				posting = Collections
+						.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+				grams.put(gram, posting);
+			}
+			posting.add(entry);
+		}
+	}
+
+	private void unindex(Entry entry) {
+		String title = entry.title;
+		for (int i = 0; i + GRAM <= title.length(); i++) {
+			Long gram = gramAt(title, i);
+			Set<Entry> posting = grams.get(gram);
+			if (posting != null) {
+				posting.remove(entry);
+				if (posting.isEmpty()) {
+					grams.remove(gram);
+				}
+			}
+		}
+	}
+
+	private static Long gramAt(String s, int i) {
+		return Long.valueOf(((long) s.charAt(i) << 32)
+				| ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2));
+	}
+
+	private static boolean startsWord(String title, String query) {
+		for (int i = title.indexOf(query); i >= 0; i = title.indexOf(query,
+				i + 1)) {
+			if (i == 0 || !Character.isLetterOrDigit(title.charAt(i - 1))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String normalise(String title) {
+		return title == null ? "" : title.toLowerCase(Locale.ROOT);
+	}
+
+	private static final Comparator<Entry> RECENT_FIRST = new Comparator<Entry>() {
+		@Override
+		public int compare(Entry a, Entry b) {
+			if (a.lastActivated != b.lastActivated) {
+				return a.lastActivated > b.lastActivated ? -1 : 1;
+			}
+			// Never activated: oldest first, as in the recent list
+			return Long.compare(a.added, b.added);
+		}
+	};
+
+	private static final class Entry {
+
+		final JInternalFrame frame;
+		final long added;
+		String title;
+		long lastActivated;
+		Entry previous;
+		Entry next;
+
+		Entry(JInternalFrame frame, long added) {
+			this.frame = frame;
+			this.added = added;
+			this.title = normalise(frame.getTitle());
+		}
+	}
+
+	/**
+	 * Keeps the index in step with the desktop's frames
+	 */
+	private class Tracker extends MDIDesktopFrameTracker {
+
+		Tracker(MDIDesktopPane desktop) {
+			super(desktop);
+		}
+
+		@Override
+		protected void frameTracked(JInternalFrame frame) {
+			add(frame);
+		}
+
+		@Override
+		protected void frameUntracked(JInternalFrame frame) {
+			remove(frame);
+		}
+
+		@Override
+		protected void frameBoundsChanged(JInternalFrame frame) {
+		}
+	}
+}
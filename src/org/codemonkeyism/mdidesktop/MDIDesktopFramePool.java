@@ -0,0 +1,257 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Keeps closed frames of registered classes so they can be handed out again
+ * instead of being built from scratch. Only frame classes registered with
+ * <code>register()</code> are pooled, each with its own limit on how many
+ * idle frames are kept. Frames that stay idle longer than the idle timeout
+ * are dropped.
+ *
+ * Install a pool on the view with
+ * <code>MDIDesktopAbstractView.setFramePool()</code> so that frames removed
+ * through <code>removeFrame()</code> are released into it, then ask it for a
+ * frame before building a new one:
+ *
+ * <pre>
+ * OrderFrame frame = pool.acquire(OrderFrame.class, parent);
+ * if (frame == null) {
+ * 	frame = new OrderFrame(parent);
+ * }
+ * view.addFrame(frame);
+ * </pre>
+ *
+ * Released frames are reset, and their subclasses get a chance to clear
+ * their own state in <code>MDIDesktopFrame.resetForReuse()</code>. Use the
+ * pool from the event dispatch thread.
+ *
+ * @author Dean
+ */
+public class MDIDesktopFramePool {
+
+	public static final int DEFAULT_MAX_IDLE = 8;
+	public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES
+			.toMillis(5);
+
+	private final Map<Class<?>, Integer> maxIdle = new HashMap<Class<?>, Integer>();
+	private final Map<Class<?>, ArrayDeque<IdleFrame>> idleFrames = new HashMap<Class<?>, ArrayDeque<IdleFrame>>();
+	private final long idleTimeoutNanos;
+	private final Timer evictionTimer;
+
+	private int idleCount;
+	private long hitCount;
+	private long missCount;
+	private long evictionCount;
+
+	public MDIDesktopFramePool() {
+		this(DEFAULT_IDLE_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param idleTimeoutMillis
+	 *            how long a frame may sit unused in the pool
+	 */
+	public MDIDesktopFramePool(long idleTimeoutMillis) {
+		checkArgument(idleTimeoutMillis > 0, "Idle timeout must be positive");
+		this.idleTimeoutNanos = TimeUnit.MILLISECONDS
+				.toNanos(idleTimeoutMillis);
+		int sweepMillis = (int) Math.min(Integer.MAX_VALUE,
+				Math.max(1, idleTimeoutMillis / 2));
+		evictionTimer = new Timer(sweepMillis, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				evictIdle();
+			}
+		});
+	}
+
+	/**
+	 * Pool frames of exactly this class, keeping up to
+	 * <code>DEFAULT_MAX_IDLE</code> of them
+	 *
+	 * @param type
+	 */
+	public void register(Class<? extends MDIDesktopFrame> type) {
+		register(type, DEFAULT_MAX_IDLE);
+	}
+
+	/**
+	 * Pool frames of exactly this class
+	 *
+	 * @param type
+	 * @param maxIdleFrames
+	 *            how many closed frames to keep at most
+	 */
+	public void register(Class<? extends MDIDesktopFrame> type,
+			int maxIdleFrames) {
+		checkNotNull(type);
+		checkArgument(maxIdleFrames > 0, "Pool size must be positive");
+		maxIdle.put(type, maxIdleFrames);
+		ArrayDeque<IdleFrame> frames = idleFrames.get(type);
+		while (frames != null && frames.size() > maxIdleFrames) {
+			frames.pollFirst();
+			idleCount--;
+		}
+	}
+
+	public boolean isRegistered(Class<? extends MDIDesktopFrame> type) {
+		return maxIdle.containsKey(type);
+	}
+
+	/**
+	 * Take a pooled frame of the given class and give it a new parent. The
+	 * frame is linked in as the parent's modal child if the parent is itself
+	 * a frame, just as a new frame would be.
+	 *
+	 * @param type
+	 * @param parent
+	 * @return frame, or null if there is none pooled and the caller must
+	 *         build one
+	 */
+	public <T extends MDIDesktopFrame> T acquire(Class<T> type,
+			JComponent parent) {
+		checkNotNull(type);
+		ArrayDeque<IdleFrame> frames = idleFrames.get(type);
+		IdleFrame idle = frames == null ? null : frames.pollLast();
+		if (idle == null) {
+			missCount++;
+			return null;
+		}
+		idleCount--;
+		hitCount++;
+		if (idleCount == 0) {
+			evictionTimer.stop();
+		}
+		T frame = type.cast(idle.frame);
+		frame.adopt(parent);
+		return frame;
+	}
+
+	/**
+	 * Hand a closed frame back to the pool
+	 *
+	 * @param frame
+	 * @return true if the frame was pooled, false if it was left to be
+	 *         garbage collected
+	 */
+	public boolean release(MDIDesktopFrame frame) {
+		checkNotNull(frame);
+		Integer max = maxIdle.get(frame.getClass());
+		if (max == null || !frame.isClosed() || frame.hasChildFrame()
+				|| frame.getParent() != null) {
+			return false;
+		}
+		ArrayDeque<IdleFrame> frames = idleFrames.get(frame.getClass());
+		if (frames == null) {
+			frames = new ArrayDeque<IdleFrame>(max);
+			idleFrames.put(frame.getClass(), frames);
+		}
+		for (IdleFrame idle : frames) {
+			if (idle.frame == frame) {
+				return true;
+			}
+		}
+		if (frames.size() >= max) {
+			return false;
+		}
+
+		if (!frame.recycle()) {
+			return false;
+		}
+		frames.addLast(new IdleFrame(frame, System.nanoTime()));
+		idleCount++;
+		if (!evictionTimer.isRunning()) {
+			evictionTimer.start();
+		}
+		return true;
+	}
+
+	/**
+	 * Drop every frame that has been idle for longer than the idle timeout
+	 */
+	public void evictIdle() {
+		long now = System.nanoTime();
+		for (ArrayDeque<IdleFrame> frames : idleFrames.values()) {
+			// Oldest first
+			Iterator<IdleFrame> it = frames.iterator();
+			while (it.hasNext()
+					&& now - it.next().releasedAt >= idleTimeoutNanos) {
+				it.remove();
+				idleCount--;
+				evictionCount++;
+			}
+		}
+		if (idleCount == 0) {
+			evictionTimer.stop();
+		}
+	}
+
+	/**
+	 * Drop every pooled frame
+	 */
+	public void clear() {
+		idleFrames.clear();
+		idleCount = 0;
+		evictionTimer.stop();
+	}
+
+	public int getIdleCount() {
+		return idleCount;
+	}
+
+	public int getIdleCount(Class<? extends MDIDesktopFrame> type) {
+		ArrayDeque<IdleFrame> frames = idleFrames.get(type);
+		return frames == null ? 0 : frames.size();
+	}
+
+	/**
+	 * How many calls to <code>acquire()</code> found a pooled frame
+	 *
+	 * @return hitCount
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * How many calls to <code>acquire()</code> found nothing pooled
+	 *
+	 * @return missCount
+	 */
+	public long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * How many frames have been dropped for sitting idle too long
+	 *
+	 * @return evictionCount
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	private static class IdleFrame {
+
+		final MDIDesktopFrame frame;
+		final long releasedAt;
+
+		IdleFrame(MDIDesktopFrame frame, long releasedAt) {
+			this.frame = frame;
+			this.releasedAt = releasedAt;
+		}
+	}
+}
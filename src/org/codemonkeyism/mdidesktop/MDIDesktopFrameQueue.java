@@ -0,0 +1,472 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import javax.swing.JInternalFrame;
+import javax.swing.SwingUtilities;
+
+/**
+ * Lets any thread add, remove and update the frames of a view without
+ * touching Swing itself or waiting on <code>invokeAndWait</code>.
+ *
+ * Commands go on a lock-free queue and are carried out on the event dispatch
+ * thread in batches of at most <code>getBatchSize()</code> per event cycle, so
+ * a storm of them cannot hold up painting and input for long. New frames are
+ * built there too, from a factory, so the submitting thread never creates a
+ * Swing component:
+ *
+ * <pre>
+ * CompletableFuture&lt;MDIDesktopFrame&gt; alert = queue
+ * 		.submitAdd(new Supplier&lt;MDIDesktopFrame&gt;() {
+ * 			public MDIDesktopFrame get() {
+ * 				return new AlertFrame(quote);
+ * 			}
+ * 		});
+ * ...
+ * queue.submitRemove(alert);
+ * </pre>
+ *
+ * Within a batch a frame that is added and then removed again is never put
+ * on the desktop at all, and neither are its updates. Removes and updates for
+ * a frame that is not on the desktop by the time their turn comes are
+ * skipped.
+ *
+ * At most <code>getCapacity()</code> adds and updates wait at once. What
+ * happens to the next one depends on the overflow policy. Removes are always
+ * taken, as dropping one would leave its frame on the desktop for good.
+ *
+ * Get one from <code>MDIDesktopAbstractView.getFrameQueue()</code>.
+ *
+ * @author Dean
+ */
+public class MDIDesktopFrameQueue {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int DEFAULT_BATCH_SIZE = 64;
+
+	/**
+	 * What to do with an add or update when the queue is full
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Wait for the event dispatch thread to make room. On the event
+		 * dispatch thread itself the queue is drained there and then.
+		 */
+		BLOCK,
+		/**
+		 * Drop the new command
+		 */
+		DROP_NEWEST,
+		/**
+		 * Drop the oldest waiting add or update to make room for the new one
+		 */
+		DROP_OLDEST
+	}
+
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS
+			.toNanos(200);
+
+	private enum Kind {
+		ADD, REMOVE, UPDATE
+	}
+
+	private final MDIDesktopAbstractView view;
+
+	private final ConcurrentLinkedQueue<Command> queue = new ConcurrentLinkedQueue<Command>();
+	// Adds and updates waiting, which is what the capacity limits
+	private final AtomicInteger pending = new AtomicInteger();
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+
+	private volatile int capacity = DEFAULT_CAPACITY;
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+	private volatile OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong droppedCount = new AtomicLong();
+	private long mergedCount;
+	private long batchCount;
+
+	private final Runnable drain = new Runnable() {
+		@Override
+		public void run() {
+			scheduled.set(false);
+			drainBatch();
+			if (!queue.isEmpty()) {
+				schedule();
+			}
+		}
+	};
+
+	MDIDesktopFrameQueue(MDIDesktopAbstractView view) {
+		this.view = view;
+	}
+
+	/**
+	 * Build a frame on the event dispatch thread and add it to the desktop, as
+	 * <code>addFrame()</code> would. Safe to call from any thread.
+	 *
+	 * @param factory
+	 *            called on the event dispatch thread
+	 * @return completes with the frame once it is on the desktop; cancelled
+	 *         if the command is dropped, or removed again before it ran
+	 */
+	public CompletableFuture<MDIDesktopFrame> submitAdd(
+			Supplier<? extends MDIDesktopFrame> factory) {
+		CompletableFuture<MDIDesktopFrame> added = new CompletableFuture<MDIDesktopFrame>();
+		Command command = new Command(Kind.ADD, null, added, null);
+		command.factory = checkNotNull(factory);
+		command.result = added;
+		if (!submit(command)) {
+			added.cancel(false);
+		}
+		return added;
+	}
+
+	/**
+	 * Add a frame that has already been built on the event dispatch thread,
+	 * as <code>addFrame()</code> would. Other threads should use
+	 * <code>submitAdd(Supplier)</code> so that they never create the frame
+	 * themselves.
+	 *
+	 * @param frame
+	 * @return false if the command was dropped
+	 */
+	public boolean submitAdd(MDIDesktopFrame frame) {
+		return submit(new Command(Kind.ADD, checkNotNull(frame), null, null));
+	}
+
+	/**
+	 * Remove a frame from the desktop, as <code>removeFrame()</code> would.
+	 * Safe to call from any thread. Never dropped.
+	 *
+	 * @param frame
+	 * @return true
+	 */
+	public boolean submitRemove(JInternalFrame frame) {
+		return submit(new Command(Kind.REMOVE, checkNotNull(frame), null, null));
+	}
+
+	/**
+	 * Remove a frame added with <code>submitAdd(Supplier)</code>, whether or
+	 * not it has been built yet. Safe to call from any thread. Never dropped.
+	 *
+	 * @param added
+	 *            as returned by <code>submitAdd()</code>
+	 * @return true
+	 */
+	public boolean submitRemove(CompletableFuture<? extends MDIDesktopFrame> added) {
+		return submit(new Command(Kind.REMOVE, null, checkNotNull(added), null));
+	}
+
+	/**
+	 * Run an update against a frame on the event dispatch thread, as long as
+	 * the frame is on the desktop by then. Safe to call from any thread.
+	 *
+	 * @param frame
+	 * @param update
+	 * @return false if the command was dropped
+	 */
+	public boolean submitUpdate(JInternalFrame frame, Runnable update) {
+		return submit(new Command(Kind.UPDATE, checkNotNull(frame), null,
+				checkNotNull(update)));
+	}
+
+	/**
+	 * Carry out every waiting command now. Call on the event dispatch thread.
+	 */
+	public void flush() {
+		while (!queue.isEmpty()) {
+			drainBatch();
+		}
+	}
+
+	/**
+	 * Set how many adds and updates may wait at once
+	 *
+	 * @param capacity
+	 */
+	public void setCapacity(int capacity) {
+		checkArgument(capacity > 0, "Capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Set the most commands carried out in one event cycle
+	 *
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		checkArgument(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Set what happens to adds and updates once the queue is full. Defaults
+	 * to <code>BLOCK</code>.
+	 *
+	 * @param overflowPolicy
+	 */
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = checkNotNull(overflowPolicy);
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * How many adds and updates are waiting
+	 *
+	 * @return pending
+	 */
+	public int getPendingCount() {
+		return pending.get();
+	}
+
+	/**
+	 * How many commands have been taken onto the queue
+	 *
+	 * @return submittedCount
+	 */
+	public long getSubmittedCount() {
+		return submittedCount.get();
+	}
+
+	/**
+	 * How many commands have been dropped because the queue was full
+	 *
+	 * @return droppedCount
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * How many frames were added and removed in the same batch, and so never
+	 * shown. Read on the event dispatch thread.
+	 *
+	 * @return mergedCount
+	 */
+	public long getMergedCount() {
+		return mergedCount;
+	}
+
+	/**
+	 * How many batches have been carried out. Read on the event dispatch
+	 * thread.
+	 *
+	 * @return batchCount
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	private boolean submit(Command command) {
+		if (command.kind != Kind.REMOVE && !reserve()) {
+			droppedCount.incrementAndGet();
+			return false;
+		}
+		queue.offer(command);
+		submittedCount.incrementAndGet();
+		schedule();
+		return true;
+	}
+
+	/**
+	 * Make room for an add or update
+	 *
+	 * @return false if it is to be dropped
+	 */
+	private boolean reserve() {
+		while (true) {
+			int n = pending.get();
+			if (n < capacity) {
+				if (pending.compareAndSet(n, n + 1)) {
+					return true;
+				}
+				continue;
+			}
+			switch (overflowPolicy) {
+			case DROP_NEWEST:
+				return false;
+			case DROP_OLDEST:
+				// The victim's place goes to the new command
+				if (dropOldest()) {
+					return true;
+				}
+				break;
+			case BLOCK:
+				if (SwingUtilities.isEventDispatchThread()) {
+					// Nothing else is going to drain it
+					flush();
+				} else if (Thread.currentThread().isInterrupted()) {
+					return false;
+				} else {
+					LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+				}
+				break;
+			}
+		}
+	}
+
+	private boolean dropOldest() {
+		for (Command c : queue) {
+			// Only one of us, or the drain, gets to take a given command
+			if (c.kind != Kind.REMOVE && queue.remove(c)) {
+				droppedCount.incrementAndGet();
+				if (c.added != null) {
+					c.added.cancel(false);
+				}
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(drain);
+		}
+	}
+
+	private void drainBatch() {
+		int limit = batchSize;
+		Command[] batch = new Command[limit];
+		int n = 0;
+		Command c;
+		while (n < limit && (c = queue.poll()) != null) {
+			if (c.kind != Kind.REMOVE) {
+				pending.decrementAndGet();
+			}
+			batch[n++] = c;
+		}
+		if (n == 0) {
+			return;
+		}
+		batchCount++;
+
+		MDIDesktopFrameRegistry registry = view.getFrameRegistry();
+
+		// An add and a later remove of the same frame cancel out, along with
+		// any updates in between. Nothing has run yet, so the registry still
+		// shows which frames were on the desktop before the batch; an add of
+		// one of those does nothing, and its remove must still happen.
+		Map<Object, Integer> adds = new IdentityHashMap<Object, Integer>();
+		for (int i = 0; i < n; i++) {
+			Command command = batch[i];
+			if (command.kind == Kind.ADD) {
+				if (command.frame == null || !registry.contains(command.frame)) {
+					adds.put(command.key(), i);
+				}
+			} else if (command.kind == Kind.REMOVE) {
+				Integer added = adds.remove(command.key());
+				if (added != null) {
+					if (batch[added].added != null) {
+						batch[added].added.cancel(false);
+					}
+					for (int k = added; k <= i; k++) {
+						if (batch[k] != null && batch[k].key() == command.key()) {
+							batch[k] = null;
+						}
+					}
+					mergedCount++;
+				}
+			}
+		}
+
+		for (int i = 0; i < n; i++) {
+			Command command = batch[i];
+			if (command == null) {
+				continue;
+			}
+			try {
+				run(command, registry);
+			} catch (RuntimeException e) {
+				if (command.result != null) {
+					command.result.completeExceptionally(e);
+				} else {
+					// One bad command should not hold up the rest
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	private void run(Command command, MDIDesktopFrameRegistry registry) {
+		JInternalFrame frame = command.frame;
+		switch (command.kind) {
+		case ADD:
+			if (frame == null) {
+				MDIDesktopFrame built = checkNotNull(command.factory.get(),
+						"Frame factory returned null");
+				view.addFrame(built);
+				command.result.complete(built);
+			} else if (!registry.contains(frame)) {
+				view.addFrame((MDIDesktopFrame) frame);
+			}
+			break;
+		case REMOVE:
+			if (frame == null) {
+				// Dropped or failed adds have nothing to remove
+				CompletableFuture<? extends MDIDesktopFrame> added = command.added;
+				if (!added.isDone() || added.isCompletedExceptionally()) {
+					break;
+				}
+				frame = added.join();
+			}
+			if (registry.contains(frame)) {
+				view.removeFrame(frame);
+			}
+			break;
+		case UPDATE:
+			if (registry.contains(frame)) {
+				command.update.run();
+			}
+			break;
+		}
+	}
+
+	private static final class Command {
+
+		final Kind kind;
+		// Null for frames built by a factory, which are known by their future
+		final JInternalFrame frame;
+		final CompletableFuture<? extends MDIDesktopFrame> added;
+		final Runnable update;
+		Supplier<? extends MDIDesktopFrame> factory;
+		CompletableFuture<MDIDesktopFrame> result;
+
+		Command(Kind kind, JInternalFrame frame,
+				CompletableFuture<? extends MDIDesktopFrame> added,
+				Runnable update) {
+			this.kind = kind;
+			this.frame = frame;
+			this.added = added;
+			this.update = update;
+		}
+
+		Object key() {
+			return frame != null ? frame : added;
+		}
+	}
+}
@@ -0,0 +1,317 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.swing.JInternalFrame;
+
+/**
+ * Every frame on an <code>MDIDesktopPane</code>, in the order they were added,
+ * kept up to date as frames come and go so that nothing has to walk the
+ * desktop's components to find them.
+ *
+ * Each frame is given an id when it arrives, which it keeps for as long as it
+ * is on the desktop. Frames can be looked up by id, by class and by exact
+ * title, and counted, without copying anything. Iterating goes straight
+ * through the registry rather than over a snapshot, so it must not be used
+ * while frames are being added or removed.
+ *
+ * A frame closed from its title bar, or added to the desktop without going
+ * through the view, is picked up just the same as one added with
+ * <code>MDIDesktopAbstractView.addFrame()</code>.
+ *
+ * Get one from <code>MDIDesktopAbstractView.getFrameRegistry()</code> or
+ * <code>MDIDesktopPane.getFrameRegistry()</code>. Use the event dispatch
+ * thread.
+ *
+ * @author Dean
+ */
+public class MDIDesktopFrameRegistry implements Iterable<JInternalFrame> {
+
+	private final Tracker tracker;
+	private final Map<JInternalFrame, Entry> entries = new IdentityHashMap<JInternalFrame, Entry>();
+	private final Map<Long, Entry> byId = new HashMap<Long, Entry>();
+	private final Map<Class<?>, Set<Entry>> byClass = new HashMap<Class<?>, Set<Entry>>();
+	private final Map<String, Set<Entry>> byTitle = new HashMap<String, Set<Entry>>();
+
+	// Oldest first
+	private Entry head;
+	private Entry tail;
+	private long nextId;
+	private int modCount;
+
+	private final PropertyChangeListener titleListener = new PropertyChangeListener() {
+		@Override
+		public void propertyChange(PropertyChangeEvent evt) {
+			Entry entry = entries.get(evt.getSource());
+			if (entry != null) {
+				remove(byTitle, entry.title, entry);
+				entry.title = titleOf(entry.frame);
+				put(byTitle, entry.title, entry);
+			}
+		}
+	};
+
+	MDIDesktopFrameRegistry(MDIDesktopPane desktop) {
+		tracker = new Tracker(desktop);
+		tracker.install();
+	}
+
+	/**
+	 * How many frames are on the desktop
+	 *
+	 * @return size
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	public boolean contains(JInternalFrame frame) {
+		return entries.containsKey(frame);
+	}
+
+	/**
+	 * The id a frame was given when it was added to the desktop
+	 *
+	 * @param frame
+	 * @return id, or -1 if the frame is not on the desktop
+	 */
+	public long getId(JInternalFrame frame) {
+		Entry entry = entries.get(frame);
+		return entry == null ? -1 : entry.id;
+	}
+
+	/**
+	 * Find a frame by its id
+	 *
+	 * @param id
+	 * @return frame, or null if no frame on the desktop has that id
+	 */
+	public JInternalFrame getFrame(long id) {
+		Entry entry = byId.get(id);
+		return entry == null ? null : entry.frame;
+	}
+
+	/**
+	 * The frames that are instances of a class, oldest first
+	 *
+	 * @param type
+	 * @return frames
+	 */
+	public <T> List<T> getFrames(Class<T> type) {
+		checkNotNull(type);
+		Set<Entry> exact = byClass.get(type);
+		if (exact != null && byClass.size() == 1) {
+			return framesOf(exact, type);
+		}
+		List<Entry> matches = new ArrayList<Entry>();
+		for (Map.Entry<Class<?>, Set<Entry>> e : byClass.entrySet()) {
+			if (type.isAssignableFrom(e.getKey())) {
+				matches.addAll(e.getValue());
+			}
+		}
+		if (byClass.size() > 1) {
+			Collections.sort(matches);
+		}
+		return framesOf(matches, type);
+	}
+
+	/**
+	 * The frames with exactly this title, in the order they took it
+	 *
+	 * @param title
+	 * @return frames
+	 */
+	public List<JInternalFrame> getFramesTitled(String title) {
+		Set<Entry> titled = byTitle.get(title == null ? "" : title);
+		if (titled == null) {
+			return Collections.emptyList();
+		}
+		return framesOf(titled, JInternalFrame.class);
+	}
+
+	/**
+	 * The frame that has had exactly this title the longest
+	 *
+	 * @param title
+	 * @return frame, or null if none has it
+	 */
+	public JInternalFrame getFrameTitled(String title) {
+		Set<Entry> titled = byTitle.get(title == null ? "" : title);
+		return titled == null ? null : titled.iterator().next().frame;
+	}
+
+	/**
+	 * Go through the frames oldest first, without copying them. Adding or
+	 * removing a frame while iterating throws a
+	 * <code>ConcurrentModificationException</code>; iconifying, moving or
+	 * retitling one does not.
+	 */
+	@Override
+	public Iterator<JInternalFrame> iterator() {
+		return new Iterator<JInternalFrame>() {
+
+			private Entry next = head;
+			private final int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public JInternalFrame next() {
+				if (modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				JInternalFrame frame = next.frame;
+				next = next.next;
+				return frame;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	private void add(JInternalFrame frame) {
+		Entry entry = new Entry(frame, nextId++);
+		entries.put(frame, entry);
+		byId.put(entry.id, entry);
+		put(byClass, frame.getClass(), entry);
+		put(byTitle, entry.title, entry);
+		entry.previous = tail;
+		if (tail == null) {
+			head = entry;
+		} else {
+			tail.next = entry;
+		}
+		tail = entry;
+		modCount++;
+		frame.addPropertyChangeListener(JInternalFrame.TITLE_PROPERTY,
+				titleListener);
+	}
+
+	private void remove(JInternalFrame frame) {
+		Entry entry = entries.remove(frame);
+		if (entry == null) {
+			return;
+		}
+		frame.removePropertyChangeListener(JInternalFrame.TITLE_PROPERTY,
+				titleListener);
+		byId.remove(entry.id);
+		remove(byClass, frame.getClass(), entry);
+		remove(byTitle, entry.title, entry);
+		if (entry.previous == null) {
+			head = entry.next;
+		} else {
+			entry.previous.next = entry.next;
+		}
+		if (entry.next == null) {
+			tail = entry.previous;
+		} else {
+			entry.next.previous = entry.previous;
+		}
+		entry.previous = null;
+		entry.next = null;
+		modCount++;
+	}
+
+	private static <K> void put(Map<K, Set<Entry>> map, K key, Entry entry) {
+		Set<Entry> bucket = map.get(key);
+		if (bucket == null) {
+			bucket = new LinkedHashSet<Entry>();
+			map.put(key, bucket);
+		}
+		bucket.add(entry);
+	}
+
+	private static <K> void remove(Map<K, Set<Entry>> map, K key, Entry entry) {
+		Set<Entry> bucket = map.get(key);
+		if (bucket != null) {
+			bucket.remove(entry);
+			if (bucket.isEmpty()) {
+				map.remove(key);
+			}
+		}
+	}
+
+	private static <T> List<T> framesOf(Iterable<Entry> bucket, Class<T> type) {
+		List<T> frames = new ArrayList<T>();
+		for (Entry e : bucket) {
+			frames.add(type.cast(e.frame));
+		}
+		return frames;
+	}
+
+	private static String titleOf(JInternalFrame frame) {
+		String title = frame.getTitle();
+		return title == null ? "" : title;
+	}
+
+	private static final class Entry implements Comparable<Entry> {
+
+		final JInternalFrame frame;
+		final long id;
+		String title;
+		Entry previous;
+		Entry next;
+
+		Entry(JInternalFrame frame, long id) {
+			this.frame = frame;
+			this.id = id;
+			this.title = titleOf(frame);
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			return Long.compare(id, other.id);
+		}
+	}
+
+	/**
+	 * Keeps the registry in step with the desktop's frames
+	 */
+	private class Tracker extends MDIDesktopFrameTracker {
+
+		Tracker(MDIDesktopPane desktop) {
+			super(desktop);
+		}
+
+		@Override
+		protected void frameTracked(JInternalFrame frame) {
+			add(frame);
+		}
+
+		@Override
+		protected void frameUntracked(JInternalFrame frame) {
+			remove(frame);
+		}
+
+		@Override
+		protected void frameBoundsChanged(JInternalFrame frame) {
+		}
+	}
+}
@@ -0,0 +1,206 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.awt.AWTEvent;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.EventQueue;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseEvent;
+
+import javax.swing.DesktopManager;
+import javax.swing.JInternalFrame;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+
+/**
+ * Scrolls the viewport an <code>MDIDesktopPane</code> sits in so that a frame
+ * can be seen, moving it as little as possible: not at all if the frame is
+ * already in view, otherwise just far enough to bring its far edge in. A frame
+ * larger than the viewport has its top left corner, and so its title bar,
+ * brought into view.
+ *
+ * Requests are coalesced: any number made before the next event dispatch pass
+ * result in a single move, to the frame asked for last. The move is one
+ * <code>setViewPosition</code>, which a viewport in blit scroll mode turns into
+ * a copy of the pixels still in view and a repaint of the strip uncovered,
+ * rather than a repaint of the whole desktop.
+ *
+ * With auto-reveal on, every frame that is selected is revealed, unless it
+ * was selected by the user clicking on it.
+ *
+ * Get one from <code>MDIDesktopPane.getFrameRevealer()</code>. Use the event
+ * dispatch thread.
+ *
+ * @author Dean
+ */
+public class MDIDesktopFrameRevealer {
+
+	private final MDIDesktopPane desktop;
+
+	private boolean autoReveal = true;
+
+	private JInternalFrame pending;
+	private boolean scheduled;
+	private long requestCount;
+	private long scrollCount;
+
+	private final Runnable pass = new Runnable() {
+		@Override
+		public void run() {
+			scheduled = false;
+			JInternalFrame frame = pending;
+			pending = null;
+			if (frame != null) {
+				revealNow(frame);
+			}
+		}
+	};
+
+	MDIDesktopFrameRevealer(MDIDesktopPane desktop) {
+		this.desktop = desktop;
+	}
+
+	/**
+	 * Reveal frames as they are selected? On by default.
+	 *
+	 * @param autoReveal
+	 */
+	public void setAutoReveal(boolean autoReveal) {
+		this.autoReveal = autoReveal;
+	}
+
+	public boolean isAutoReveal() {
+		return autoReveal;
+	}
+
+	/**
+	 * Ask for a frame to be scrolled into view on the next event dispatch
+	 * pass. A later request before then replaces this one.
+	 *
+	 * @param frame
+	 */
+	public void reveal(JInternalFrame frame) {
+		checkNotNull(frame);
+		requestCount++;
+		pending = frame;
+		if (!scheduled) {
+			scheduled = true;
+			SwingUtilities.invokeLater(pass);
+		}
+	}
+
+	/**
+	 * Scroll a frame into view straight away
+	 *
+	 * @param frame
+	 * @return true if the viewport moved
+	 */
+	public boolean revealNow(JInternalFrame frame) {
+		checkNotNull(frame);
+		if (!(desktop.getParent() instanceof JViewport)
+				|| frame.getDesktopPane() != desktop || frame.isClosed()) {
+			return false;
+		}
+		JViewport viewport = (JViewport) desktop.getParent();
+
+		// The desktop may be about to grow to take in the frame
+		DesktopManager manager = desktop.getDesktopManager();
+		if (manager instanceof MDIDesktopManager) {
+			((MDIDesktopManager) manager).getResizeScheduler().runNow();
+		}
+
+		Rectangle target = frame.isIcon() ? frame.getDesktopIcon().getBounds()
+				: frame.getBounds();
+		Rectangle view = viewport.getViewRect();
+		Point position = scrollTarget(view, target, viewport.getViewSize());
+		if (position.equals(view.getLocation())) {
+			return false;
+		}
+		viewport.setViewPosition(position);
+		scrollCount++;
+		return true;
+	}
+
+	/**
+	 * How many reveals have been asked for
+	 *
+	 * @return requestCount
+	 */
+	public long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * How many times the viewport has actually been moved
+	 *
+	 * @return scrollCount
+	 */
+	public long getScrollCount() {
+		return scrollCount;
+	}
+
+	/**
+	 * Called by the desktop manager as a frame is selected
+	 *
+	 * @param frame
+	 */
+	void frameActivated(JInternalFrame frame) {
+		if (autoReveal && !isClickOn(frame)) {
+			reveal(frame);
+		}
+	}
+
+	/**
+	 * Called when a selected frame has been moved by the program
+	 *
+	 * @param frame
+	 */
+	void frameMoved(JInternalFrame frame) {
+		if (autoReveal && frame.isSelected()) {
+			reveal(frame);
+		}
+	}
+
+	/**
+	 * The view position that shows as much of the target as will fit with the
+	 * least movement from the current view
+	 *
+	 * @param view
+	 *            the part of the desktop in view
+	 * @param target
+	 *            the bounds to bring into view
+	 * @param viewSize
+	 *            the size of the whole desktop
+	 * @return position
+	 */
+	static Point scrollTarget(Rectangle view, Rectangle target,
+			Dimension viewSize) {
+		return new Point(scrollAxis(view.x, view.width, target.x,
+				target.width, viewSize.width), scrollAxis(view.y, view.height,
+				target.y, target.height, viewSize.height));
+	}
+
+	private static int scrollAxis(int position, int extent, int start,
+			int length, int limit) {
+		if (length > extent || start < position) {
+			position = start;
+		} else if (start + length > position + extent) {
+			position = start + length - extent;
+		}
+		return Math.max(0, Math.min(position, limit - extent));
+	}
+
+	private static boolean isClickOn(JInternalFrame frame) {
+		AWTEvent event = EventQueue.getCurrentEvent();
+		if (!(event instanceof MouseEvent)) {
+			return false;
+		}
+		Component source = ((MouseEvent) event).getComponent();
+		return source != null
+				&& (SwingUtilities.isDescendingFrom(source, frame) || SwingUtilities
+						.isDescendingFrom(source, frame.getDesktopIcon()));
+	}
+}
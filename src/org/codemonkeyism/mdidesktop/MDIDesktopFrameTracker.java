@@ -0,0 +1,223 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Component;
+import java.awt.event.ComponentEvent;
+import java.awt.event.ComponentListener;
+import java.awt.event.ContainerEvent;
+import java.awt.event.ContainerListener;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import javax.swing.JInternalFrame;
+import javax.swing.JInternalFrame.JDesktopIcon;
+
+/**
+ * Base class for structures that follow the internal frames of an
+ * <code>MDIDesktopPane</code> from container and component events rather than
+ * by walking <code>getAllFrames()</code>.
+ *
+ * A frame is tracked for as long as either it or its desktop icon is on the
+ * desktop, which matches what <code>getAllFrames()</code> would return.
+ *
+ * @author Dean
+ */
+abstract class MDIDesktopFrameTracker implements ContainerListener,
+		ComponentListener {
+
+	protected final MDIDesktopPane desktop;
+
+	private final Set<JInternalFrame> frames = Collections
+			.newSetFromMap(new IdentityHashMap<JInternalFrame, Boolean>());
+
+	private boolean installed;
+
+	MDIDesktopFrameTracker(MDIDesktopPane desktop) {
+		this.desktop = desktop;
+	}
+
+	/**
+	 * Start listening to the desktop and pick up any frames already on it
+	 */
+	void install() {
+		if (installed) {
+			return;
+		}
+		installed = true;
+		desktop.addContainerListener(this);
+		for (int i = 0; i < desktop.getComponentCount(); i++) {
+			Component c = desktop.getComponent(i);
+			if (isTrackable(c)) {
+				track(c);
+			}
+		}
+	}
+
+	/**
+	 * Stop listening to the desktop and forget every tracked frame
+	 */
+	void uninstall() {
+		if (!installed) {
+			return;
+		}
+		installed = false;
+		desktop.removeContainerListener(this);
+		for (JInternalFrame frame : frames) {
+			frame.removeComponentListener(this);
+			frame.getDesktopIcon().removeComponentListener(this);
+			frameUntracked(frame);
+		}
+		frames.clear();
+	}
+
+	boolean isInstalled() {
+		return installed;
+	}
+
+	/**
+	 * Is this frame currently being tracked?
+	 *
+	 * @param frame
+	 * @return tracked
+	 */
+	boolean isTracked(JInternalFrame frame) {
+		return frames.contains(frame);
+	}
+
+	/**
+	 * The tracked frames, in no particular order
+	 *
+	 * @return frames
+	 */
+	Set<JInternalFrame> trackedFrames() {
+		return Collections.unmodifiableSet(frames);
+	}
+
+	/**
+	 * A frame, or the desktop icon of an iconified frame, has been added to the
+	 * desktop
+	 *
+	 * @param frame
+	 */
+	protected abstract void frameTracked(JInternalFrame frame);
+
+	/**
+	 * Neither the frame nor its desktop icon are on the desktop any more
+	 *
+	 * @param frame
+	 */
+	protected abstract void frameUntracked(JInternalFrame frame);
+
+	/**
+	 * A tracked frame or its desktop icon has moved or changed size, or the
+	 * frame has been swapped for its icon or back again
+	 *
+	 * @param frame
+	 */
+	protected abstract void frameBoundsChanged(JInternalFrame frame);
+
+	@Override
+	public void componentAdded(ContainerEvent e) {
+		Component c = e.getChild();
+		if (isTrackable(c)) {
+			track(c);
+		}
+	}
+
+	@Override
+	public void componentRemoved(ContainerEvent e) {
+		Component c = e.getChild();
+		if (!isTrackable(c)) {
+			return;
+		}
+		JInternalFrame frame = frameOf(c);
+		if (frame == null || !frames.contains(frame)) {
+			return;
+		}
+		// De-iconifying adds the frame before removing the icon, so the frame
+		// is only gone once neither of them is left on the desktop. Iconifying
+		// removes the frame first, but it is already marked as an icon and its
+		// icon is about to take its place.
+		boolean iconifying = c == frame && frame.isIcon() && !frame.isClosed();
+		if (!iconifying && frame.getParent() != desktop
+				&& frame.getDesktopIcon().getParent() != desktop) {
+			frames.remove(frame);
+			frame.removeComponentListener(this);
+			frame.getDesktopIcon().removeComponentListener(this);
+			frameUntracked(frame);
+		} else {
+			frameBoundsChanged(frame);
+		}
+	}
+
+	@Override
+	public void componentMoved(ComponentEvent e) {
+		boundsEvent(e.getComponent());
+	}
+
+	@Override
+	public void componentResized(ComponentEvent e) {
+		boundsEvent(e.getComponent());
+	}
+
+	@Override
+	public void componentShown(ComponentEvent e) {
+		// Visibility does not change the space a frame takes up
+	}
+
+	@Override
+	public void componentHidden(ComponentEvent e) {
+		// Visibility does not change the space a frame takes up
+	}
+
+	private void track(Component c) {
+		JInternalFrame frame = frameOf(c);
+		if (frame == null) {
+			return;
+		}
+		if (!frames.add(frame)) {
+			// The frame has been swapped for its icon, or back again
+			frameBoundsChanged(frame);
+			return;
+		}
+		frame.addComponentListener(this);
+		frame.getDesktopIcon().addComponentListener(this);
+		frameTracked(frame);
+	}
+
+	/**
+	 * Component events are posted to the event queue, so by the time one
+	 * arrives the frame may already have left the desktop
+	 *
+	 * @param c
+	 */
+	private void boundsEvent(Component c) {
+		JInternalFrame frame = frameOf(c);
+		if (frame != null && frames.contains(frame)) {
+			frameBoundsChanged(frame);
+		}
+	}
+
+	/**
+	 * Is this a component that represents a frame on the desktop?
+	 *
+	 * @param c
+	 * @return trackable
+	 */
+	static boolean isTrackable(Component c) {
+		return c instanceof JInternalFrame || c instanceof JDesktopIcon;
+	}
+
+	/**
+	 * Resolve a frame or desktop icon to the internal frame it represents
+	 *
+	 * @param c
+	 * @return frame
+	 */
+	static JInternalFrame frameOf(Component c) {
+		if (c instanceof JDesktopIcon) {
+			return ((JDesktopIcon) c).getInternalFrame();
+		}
+		return (JInternalFrame) c;
+	}
+}
@@ -0,0 +1,290 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.DesktopManager;
+import javax.swing.JInternalFrame;
+import javax.swing.Timer;
+
+/**
+ * Animates frames from their current bounds to a set of target bounds. A
+ * single Swing timer drives every frame, interpolating from arrays of start
+ * and end bounds that are filled once when the animation starts, so a tick
+ * allocates nothing.
+ *
+ * Progress is worked out from the time since the animation started rather
+ * than by counting ticks, so when the event dispatch thread falls behind the
+ * timer coalesces the late ticks and the animation simply skips ahead.
+ *
+ * @author Dean
+ */
+public class MDIDesktopLayoutAnimator {
+
+	public static final int DEFAULT_DURATION = 200;
+	public static final int DEFAULT_TICK_INTERVAL = 16;
+	public static final int DEFAULT_MAXIMUM_FRAMES = 200;
+
+	private final MDIDesktopPane desktop;
+	private final Timer timer;
+
+	private int duration = DEFAULT_DURATION;
+	private int maximumFrames = DEFAULT_MAXIMUM_FRAMES;
+
+	private JInternalFrame[] frames = new JInternalFrame[0];
+	private int[] from = new int[0];
+	private int[] to = new int[0];
+	private int count;
+	private long startNanos;
+	private long expectedTicks;
+
+	private long tickCount;
+	private long droppedTicks;
+	private long lastTickNanos;
+	private long maxTickNanos;
+	private long totalTickNanos;
+
+	MDIDesktopLayoutAnimator(MDIDesktopPane desktop) {
+		this.desktop = desktop;
+		timer = new Timer(DEFAULT_TICK_INTERVAL, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				tick();
+			}
+		});
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Move the frames to the given bounds. Above the maximum frame count, or
+	 * with a zero duration, the frames are moved straight away.
+	 *
+	 * @param targetFrames
+	 * @param targetBounds
+	 *            x, y, width and height of each frame in turn
+	 * @param targetCount
+	 *            how many frames to move
+	 */
+	public void animate(JInternalFrame[] targetFrames, int[] targetBounds,
+			int targetCount) {
+		checkArgument(targetBounds.length >= targetCount * 4,
+				"Need four bounds values per frame");
+		if (isRunning()) {
+			finish();
+		}
+		if (targetCount == 0) {
+			return;
+		}
+		if (targetCount > maximumFrames || duration == 0) {
+			apply(targetFrames, targetBounds, targetCount);
+			return;
+		}
+
+		ensureCapacity(targetCount);
+		for (int i = 0; i < targetCount; i++) {
+			JInternalFrame f = targetFrames[i];
+			int b = i * 4;
+			frames[i] = f;
+			from[b] = f.getX();
+			from[b + 1] = f.getY();
+			from[b + 2] = f.getWidth();
+			from[b + 3] = f.getHeight();
+		}
+		System.arraycopy(targetBounds, 0, to, 0, targetCount * 4);
+		count = targetCount;
+		startNanos = System.nanoTime();
+		expectedTicks = 0;
+		timer.start();
+	}
+
+	/**
+	 * Jump the running animation, if any, to its final bounds
+	 */
+	public void finish() {
+		if (!isRunning()) {
+			return;
+		}
+		timer.stop();
+		apply(frames, to, count);
+		release();
+	}
+
+	public boolean isRunning() {
+		return timer.isRunning();
+	}
+
+	/**
+	 * Set how long an animation takes
+	 *
+	 * @param milliseconds
+	 */
+	public void setDuration(int milliseconds) {
+		checkArgument(milliseconds >= 0, "Duration cannot be negative");
+		duration = milliseconds;
+	}
+
+	public int getDuration() {
+		return duration;
+	}
+
+	/**
+	 * Set the number of frames above which layouts are applied instantly
+	 *
+	 * @param maximumFrames
+	 */
+	public void setMaximumFrames(int maximumFrames) {
+		checkArgument(maximumFrames >= 0, "Maximum frames cannot be negative");
+		this.maximumFrames = maximumFrames;
+	}
+
+	public int getMaximumFrames() {
+		return maximumFrames;
+	}
+
+	/**
+	 * Set the time between ticks
+	 *
+	 * @param milliseconds
+	 */
+	public void setTickInterval(int milliseconds) {
+		checkArgument(milliseconds > 0, "Tick interval must be positive");
+		timer.setDelay(milliseconds);
+	}
+
+	public int getTickInterval() {
+		return timer.getDelay();
+	}
+
+	/**
+	 * How many ticks have run
+	 *
+	 * @return tickCount
+	 */
+	public long getTickCount() {
+		return tickCount;
+	}
+
+	/**
+	 * How many ticks were skipped because the event dispatch thread was behind
+	 *
+	 * @return droppedTicks
+	 */
+	public long getDroppedTicks() {
+		return droppedTicks;
+	}
+
+	/**
+	 * How long the last tick took to move every frame
+	 *
+	 * @return nanoseconds
+	 */
+	public long getLastTickNanos() {
+		return lastTickNanos;
+	}
+
+	/**
+	 * The slowest tick so far
+	 *
+	 * @return nanoseconds
+	 */
+	public long getMaxTickNanos() {
+		return maxTickNanos;
+	}
+
+	/**
+	 * The mean tick time so far
+	 *
+	 * @return nanoseconds
+	 */
+	public long getMeanTickNanos() {
+		return tickCount == 0 ? 0 : totalTickNanos / tickCount;
+	}
+
+	/**
+	 * Reset the tick timings
+	 */
+	public void resetTimings() {
+		tickCount = 0;
+		droppedTicks = 0;
+		lastTickNanos = 0;
+		maxTickNanos = 0;
+		totalTickNanos = 0;
+	}
+
+	private void tick() {
+		long tickStart = System.nanoTime();
+		long elapsed = tickStart - startNanos;
+		long durationNanos = TimeUnit.MILLISECONDS.toNanos(duration);
+
+		long due = elapsed / TimeUnit.MILLISECONDS.toNanos(timer.getDelay());
+		expectedTicks++;
+		if (due > expectedTicks) {
+			droppedTicks += due - expectedTicks;
+			expectedTicks = due;
+		}
+
+		if (elapsed >= durationNanos) {
+			timer.stop();
+			apply(frames, to, count);
+			release();
+		} else {
+			// Ease in and out so frames do not start or stop abruptly
+			double t = (double) elapsed / durationNanos;
+			t = t * t * (3 - 2 * t);
+			DesktopManager dm = desktop.getDesktopManager();
+			for (int i = 0; i < count; i++) {
+				int b = i * 4;
+				dm.setBoundsForFrame(frames[i], lerp(from[b], to[b], t),
+						lerp(from[b + 1], to[b + 1], t),
+						lerp(from[b + 2], to[b + 2], t),
+						lerp(from[b + 3], to[b + 3], t));
+			}
+		}
+
+		lastTickNanos = System.nanoTime() - tickStart;
+		maxTickNanos = Math.max(maxTickNanos, lastTickNanos);
+		totalTickNanos += lastTickNanos;
+		tickCount++;
+	}
+
+	private void apply(JInternalFrame[] targetFrames, int[] targetBounds,
+			int targetCount) {
+		DesktopManager dm = desktop.getDesktopManager();
+		desktop.beginLayout();
+		try {
+			for (int i = 0; i < targetCount; i++) {
+				int b = i * 4;
+				dm.setBoundsForFrame(targetFrames[i], targetBounds[b],
+						targetBounds[b + 1], targetBounds[b + 2],
+						targetBounds[b + 3]);
+			}
+			desktop.checkDesktopSize();
+		} finally {
+			desktop.commitLayout();
+		}
+	}
+
+	private void ensureCapacity(int n) {
+		if (frames.length < n) {
+			frames = new JInternalFrame[n];
+			from = new int[n * 4];
+			to = new int[n * 4];
+		}
+	}
+
+	/**
+	 * Let go of the frames once the animation is over
+	 */
+	private void release() {
+		Arrays.fill(frames, 0, count, null);
+		count = 0;
+	}
+
+	private static int lerp(int a, int b, double t) {
+		return a + (int) Math.round((b - a) * t);
+	}
+}
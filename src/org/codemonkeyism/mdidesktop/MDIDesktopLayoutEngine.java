@@ -0,0 +1,315 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+
+/**
+ * The geometry behind tile and cascade. Takes the size constraints of each
+ * frame and works out where every frame should go, without touching Swing, so
+ * that it can run on any thread.
+ *
+ * Results are arrays of x, y, width and height for each frame in turn, in the
+ * same order as the constraints, ready for
+ * <code>MDIDesktopPane.applyFrameBounds</code>.
+ *
+ * @author Dean
+ */
+public final class MDIDesktopLayoutEngine {
+
+	private MDIDesktopLayoutEngine() {
+	}
+
+	/**
+	 * The size limits of one frame, captured on the event dispatch thread.
+	 * Preferred is the size the frame has now; a frame that is not resizable
+	 * always keeps it.
+	 */
+	public static final class FrameConstraints {
+
+		final int minWidth;
+		final int minHeight;
+		final int maxWidth;
+		final int maxHeight;
+		final int preferredWidth;
+		final int preferredHeight;
+		final boolean resizable;
+
+		public FrameConstraints(int minWidth, int minHeight, int maxWidth,
+				int maxHeight, int preferredWidth, int preferredHeight,
+				boolean resizable) {
+			this.minWidth = Math.max(0, minWidth);
+			this.minHeight = Math.max(0, minHeight);
+			this.maxWidth = Math.max(this.minWidth, maxWidth);
+			this.maxHeight = Math.max(this.minHeight, maxHeight);
+			this.preferredWidth = preferredWidth;
+			this.preferredHeight = preferredHeight;
+			this.resizable = resizable;
+		}
+
+		public int getMinWidth() {
+			return minWidth;
+		}
+
+		public int getMinHeight() {
+			return minHeight;
+		}
+
+		public int getMaxWidth() {
+			return maxWidth;
+		}
+
+		public int getMaxHeight() {
+			return maxHeight;
+		}
+
+		public int getPreferredWidth() {
+			return preferredWidth;
+		}
+
+		public int getPreferredHeight() {
+			return preferredHeight;
+		}
+
+		public boolean isResizable() {
+			return resizable;
+		}
+
+		/**
+		 * The narrowest this frame may be made: its minimum, or its own width
+		 * if it is not resizable
+		 * 
+		 * @return width
+		 */
+		public int lowestWidth() {
+			return resizable ? minWidth : preferredWidth;
+		}
+
+		/**
+		 * The widest this frame may be made
+		 * 
+		 * @return width
+		 */
+		public int highestWidth() {
+			return resizable ? maxWidth : preferredWidth;
+		}
+
+		/**
+		 * The shortest this frame may be made
+		 * 
+		 * @return height
+		 */
+		public int lowestHeight() {
+			return resizable ? minHeight : preferredHeight;
+		}
+
+		/**
+		 * The tallest this frame may be made
+		 * 
+		 * @return height
+		 */
+		public int highestHeight() {
+			return resizable ? maxHeight : preferredHeight;
+		}
+	}
+
+	/**
+	 * Tile frames over an area in a grid of near equal rows. Frames that are
+	 * not resizable keep their size and take their place in the grid; the
+	 * space left in their row and column is shared among the resizable frames,
+	 * each kept within its minimum and maximum size. If the frames cannot fit
+	 * the area at their minimum sizes they overflow it to the right and
+	 * bottom.
+	 *
+	 * @param frames
+	 *            in the order they fill the grid, left to right and top to
+	 *            bottom
+	 * @param width
+	 * @param height
+	 * @return bounds
+	 */
+	public static int[] tile(FrameConstraints[] frames, int width, int height) {
+		checkNotNull(frames);
+		int count = frames.length;
+		int[] bounds = new int[count * 4];
+		if (count == 0) {
+			return bounds;
+		}
+
+		// Same grid as always: as square as possible, extra columns first
+		int rows = (int) Math.sqrt(count);
+		int cols = rows;
+		if (rows * cols < count) {
+			cols++;
+			if (rows * cols < count) {
+				rows++;
+			}
+		}
+		// The last rows may be empty once the grid is rounded up
+		rows = (count + cols - 1) / cols;
+
+		int[] rowMin = new int[rows];
+		int[] rowMax = new int[rows];
+		for (int r = 0; r < rows; r++) {
+			for (int i = r * cols; i < Math.min(count, (r + 1) * cols); i++) {
+				rowMin[r] = Math.max(rowMin[r], frames[i].lowestHeight());
+				rowMax[r] = Math.max(rowMax[r], frames[i].highestHeight());
+			}
+		}
+		int[] rowHeights = distribute(height, rowMin, rowMax);
+
+		int y = 0;
+		for (int r = 0; r < rows; r++) {
+			int first = r * cols;
+			int last = Math.min(count, first + cols);
+			int[] min = new int[last - first];
+			int[] max = new int[last - first];
+			for (int i = first; i < last; i++) {
+				min[i - first] = frames[i].lowestWidth();
+				max[i - first] = frames[i].highestWidth();
+			}
+			int[] widths = distribute(width, min, max);
+
+			int x = 0;
+			for (int i = first; i < last; i++) {
+				FrameConstraints f = frames[i];
+				int b = i * 4;
+				bounds[b] = x;
+				bounds[b + 1] = y;
+				bounds[b + 2] = widths[i - first];
+				bounds[b + 3] = clamp(rowHeights[r], f.lowestHeight(),
+						f.highestHeight());
+				x += widths[i - first];
+			}
+			y += rowHeights[r];
+		}
+		return bounds;
+	}
+
+	/**
+	 * Cascade frames from the top left corner, each one offset down and to
+	 * the right of the one before. Frames keep their preferred size, within
+	 * their minimum and maximum.
+	 *
+	 * @param frames
+	 *            back to front
+	 * @param offset
+	 *            step between frames
+	 * @return bounds
+	 */
+	public static int[] cascade(FrameConstraints[] frames, int offset) {
+		checkNotNull(frames);
+		checkArgument(offset >= 0, "offset must not be negative");
+		int[] bounds = new int[frames.length * 4];
+		int x = 0;
+		int y = 0;
+		for (int i = 0; i < frames.length; i++) {
+			FrameConstraints f = frames[i];
+			int b = i * 4;
+			bounds[b] = x;
+			bounds[b + 1] = y;
+			bounds[b + 2] = clamp(f.preferredWidth, f.lowestWidth(),
+					f.highestWidth());
+			bounds[b + 3] = clamp(f.preferredHeight, f.lowestHeight(),
+					f.highestHeight());
+			x += offset;
+			y += offset;
+		}
+		return bounds;
+	}
+
+	/**
+	 * Share a length out as evenly as the limits on each part allow. Parts
+	 * whose minimum is above the even share get their minimum and parts whose
+	 * maximum is below it get their maximum; the rest is shared again among
+	 * the others until every part is within its limits. Any pixels left over
+	 * from rounding go to the first free parts, so the parts fill the length
+	 * exactly unless their limits say otherwise.
+	 *
+	 * The parts are sorted by their limits once, so this is n log n however
+	 * many of them end up at a limit.
+	 *
+	 * @param total
+	 * @param min
+	 * @param max
+	 * @return sizes
+	 */
+	public static int[] distribute(int total, int[] min, int[] max) {
+		int n = min.length;
+		checkArgument(max.length == n, "min and max differ in length");
+		int[] sizes = new int[n];
+		boolean[] settled = new boolean[n];
+		long free = total;
+		int open = n;
+
+		// Largest minimums first: each one settled only lowers the share,
+		// so the parts at their minimum are a run from the top
+		long[] byMin = sortedByKey(min);
+		for (int k = n - 1; k >= 0; k--) {
+			int i = (int) byMin[k];
+			if (min[i] <= free / open) {
+				break;
+			}
+			settled[i] = true;
+			sizes[i] = min[i];
+			free -= min[i];
+			open--;
+		}
+		if (open == 0) {
+			return sizes;
+		}
+
+		// Then the smallest maximums, which can only raise the share
+		long[] byMax = sortedByKey(max);
+		for (int k = 0; k < n && open > 0; k++) {
+			int i = (int) byMax[k];
+			if (settled[i]) {
+				continue;
+			}
+			if (max[i] >= free / open) {
+				break;
+			}
+			settled[i] = true;
+			sizes[i] = max[i];
+			free -= max[i];
+			open--;
+		}
+		if (open == 0) {
+			return sizes;
+		}
+
+		int share = (int) (free / open);
+		long extra = free - (long) share * open;
+		for (int i = 0; i < n; i++) {
+			if (!settled[i]) {
+				sizes[i] = share;
+				if (extra > 0 && share < max[i]) {
+					sizes[i]++;
+					extra--;
+				}
+			}
+		}
+		return sizes;
+	}
+
+	/**
+	 * Indices of the keys in ascending order of key, in the low half of each
+	 * long. Keys must not be negative.
+	 */
+	private static long[] sortedByKey(int[] keys) {
+		long[] sorted = new long[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			sorted[i] = ((long) Math.max(0, keys[i]) << 32) | i;
+		}
+		Arrays.sort(sorted);
+		for (int i = 0; i < sorted.length; i++) {
+			sorted[i] &= 0xffffffffL;
+		}
+		return sorted;
+	}
+
+	static int clamp(int value, int min, int max) {
+		return Math.max(min, Math.min(value, max));
+	}
+}
@@ -0,0 +1,398 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.beans.PropertyVetoException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JComponent;
+import javax.swing.JInternalFrame;
+import javax.swing.JInternalFrame.JDesktopIcon;
+import javax.swing.JLayeredPane;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopMetrics.Operation;
+
+/**
+ * Saves and restores the layout of the frames on a desktop in a compact binary
+ * format: frame type, bounds, layer, iconified and maximised state, which
+ * frame was selected, the front to back order and the parent/child modal
+ * chain.
+ *
+ * Frames are written parents first so that a restore can hand each new frame
+ * its parent. A restore builds every frame off the desktop, adds them all in
+ * one layout transaction in their saved order and finishes with a single
+ * desktop resize and repaint.
+ *
+ * Only <code>MDIDesktopFrame</code>s are saved.
+ *
+ * @author Dean
+ */
+public final class MDIDesktopLayoutSnapshot {
+
+	/**
+	 * Creates the frames for a restore
+	 */
+	public interface FrameFactory {
+
+		/**
+		 * Create a frame of the given type. The frame should not be shown or
+		 * added to the desktop; the restore does that.
+		 *
+		 * @param type
+		 *            the type saved for the frame, by default its class name
+		 * @param parent
+		 *            the desktop pane, or the restored parent frame of a modal
+		 *            child
+		 * @return frame
+		 */
+		MDIDesktopFrame createFrame(String type, JComponent parent);
+	}
+
+	private static final int MAGIC = 0x4D44494C; // "MDIL"
+	private static final int VERSION = 1;
+
+	private static final int ICON = 1;
+	private static final int MAXIMUM = 2;
+	private static final int SELECTED = 4;
+
+	private MDIDesktopLayoutSnapshot() {
+	}
+
+	/**
+	 * Write the layout of every frame on the desktop
+	 *
+	 * @param desktopPane
+	 * @param out
+	 *            not closed
+	 * @return the number of frames written
+	 * @throws IOException
+	 */
+	public static int write(MDIDesktopPane desktopPane, OutputStream out)
+			throws IOException {
+		checkNotNull(desktopPane);
+		checkNotNull(out);
+
+		// Components run front to back, and a frame's icon stands in for it
+		// while it is iconified
+		int componentCount = desktopPane.getComponentCount();
+		List<MDIDesktopFrame> zOrder = new ArrayList<MDIDesktopFrame>(
+				componentCount);
+		Set<MDIDesktopFrame> onDesktop = Collections
+				.newSetFromMap(new IdentityHashMap<MDIDesktopFrame, Boolean>());
+		for (int i = 0; i < componentCount; i++) {
+			// Palettes, drag overlays and the like are not part of the layout
+			Component c = desktopPane.getComponent(i);
+			if (!MDIDesktopFrameTracker.isTrackable(c)) {
+				continue;
+			}
+			JInternalFrame frame = MDIDesktopFrameTracker.frameOf(c);
+			if (frame instanceof MDIDesktopFrame
+					&& onDesktop.add((MDIDesktopFrame) frame)) {
+				zOrder.add((MDIDesktopFrame) frame);
+			}
+		}
+
+		// Parents before children
+		Map<MDIDesktopFrame, Integer> indices = new IdentityHashMap<MDIDesktopFrame, Integer>();
+		List<MDIDesktopFrame> records = new ArrayList<MDIDesktopFrame>(
+				zOrder.size());
+		for (MDIDesktopFrame frame : zOrder) {
+			addRecord(frame, onDesktop, indices, records);
+		}
+
+		Map<String, Integer> types = new HashMap<String, Integer>();
+		List<String> typeTable = new ArrayList<String>();
+		int[] typeIndices = new int[records.size()];
+		for (int i = 0; i < records.size(); i++) {
+			String type = records.get(i).getClass().getName();
+			Integer index = types.get(type);
+			if (index == null) {
+				index = typeTable.size();
+				types.put(type, index);
+				typeTable.add(type);
+			}
+			typeIndices[i] = index;
+		}
+
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(
+				out));
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		writeVarInt(data, typeTable.size());
+		for (String type : typeTable) {
+			data.writeUTF(type);
+		}
+		writeVarInt(data, records.size());
+		for (int i = 0; i < records.size(); i++) {
+			MDIDesktopFrame frame = records.get(i);
+			writeVarInt(data, typeIndices[i]);
+			JComponent parent = frame.getParentFrame();
+			Integer parentIndex = parent instanceof MDIDesktopFrame ? indices
+					.get(parent) : null;
+			writeVarInt(data, parentIndex == null ? 0 : parentIndex + 1);
+			writeSignedVarInt(data, JLayeredPane.getLayer(frame));
+
+			int flags = 0;
+			if (frame.isIcon()) {
+				flags |= ICON;
+			}
+			if (frame.isMaximum()) {
+				flags |= MAXIMUM;
+			}
+			if (frame.isSelected()) {
+				flags |= SELECTED;
+			}
+			data.writeByte(flags);
+			writeBounds(data, frame.getNormalBounds());
+			if (frame.isIcon()) {
+				writeBounds(data, frame.getDesktopIcon().getBounds());
+			}
+		}
+		for (MDIDesktopFrame frame : zOrder) {
+			writeVarInt(data, indices.get(frame));
+		}
+		data.flush();
+		return records.size();
+	}
+
+	private static void addRecord(MDIDesktopFrame frame,
+			Set<MDIDesktopFrame> onDesktop,
+			Map<MDIDesktopFrame, Integer> indices, List<MDIDesktopFrame> records) {
+		if (indices.containsKey(frame)) {
+			return;
+		}
+		JComponent parent = frame.getParentFrame();
+		if (parent instanceof MDIDesktopFrame && onDesktop.contains(parent)) {
+			addRecord((MDIDesktopFrame) parent, onDesktop, indices, records);
+		}
+		indices.put(frame, records.size());
+		records.add(frame);
+	}
+
+	/**
+	 * Restore a saved layout, adding the frames to those already on the
+	 * desktop. Call on the event dispatch thread.
+	 *
+	 * @param desktopPane
+	 * @param in
+	 *            not closed
+	 * @param factory
+	 * @return the restored frames, in the order they were saved
+	 * @throws IOException
+	 *             if the stream is not a saved layout
+	 */
+	public static List<MDIDesktopFrame> restore(MDIDesktopPane desktopPane,
+			InputStream in, FrameFactory factory) throws IOException {
+		checkNotNull(desktopPane);
+		checkNotNull(in);
+		checkNotNull(factory);
+
+		MDIDesktopMetrics metrics = MDIDesktopMetrics.getInstance();
+		long start = metrics.begin(Operation.RESTORE_LAYOUT);
+		try {
+			return restoreFrames(desktopPane, in, factory);
+		} finally {
+			metrics.end(Operation.RESTORE_LAYOUT, start);
+		}
+	}
+
+	private static List<MDIDesktopFrame> restoreFrames(
+			final MDIDesktopPane desktopPane, InputStream in,
+			FrameFactory factory) throws IOException {
+		DataInputStream data = new DataInputStream(
+				new BufferedInputStream(in));
+		if (data.readInt() != MAGIC) {
+			throw new StreamCorruptedException("Not a desktop layout");
+		}
+		int version = data.readUnsignedByte();
+		if (version != VERSION) {
+			throw new StreamCorruptedException("Unknown layout version "
+					+ version);
+		}
+
+		int typeCount = readCount(data);
+		String[] types = new String[typeCount];
+		for (int i = 0; i < typeCount; i++) {
+			types[i] = data.readUTF();
+		}
+
+		int count = readCount(data);
+		final MDIDesktopFrame[] frames = new MDIDesktopFrame[count];
+		final int[] layers = new int[count];
+		final int[] flags = new int[count];
+		final Rectangle[] iconBounds = new Rectangle[count];
+
+		// Build every frame off the desktop, where showing, iconifying and
+		// maximising them is cheap and cannot disturb the stacking order
+		for (int i = 0; i < count; i++) {
+			int type = readVarInt(data);
+			int parentIndex = readVarInt(data) - 1;
+			if (type < 0 || type >= typeCount || parentIndex < -1
+					|| parentIndex >= i) {
+				throw new StreamCorruptedException("Bad frame record " + i);
+			}
+			layers[i] = readSignedVarInt(data);
+			flags[i] = data.readUnsignedByte();
+			Rectangle bounds = readBounds(data);
+			if ((flags[i] & ICON) != 0) {
+				iconBounds[i] = readBounds(data);
+			}
+
+			JComponent parent = parentIndex < 0 ? desktopPane
+					: frames[parentIndex];
+			MDIDesktopFrame frame = checkNotNull(
+					factory.createFrame(types[type], parent),
+					"FrameFactory returned null for %s", types[type]);
+			if (frame.getParentFrame() == null) {
+				frame.setParentFrame(parent);
+			}
+			frame.setBounds(bounds);
+			try {
+				if ((flags[i] & MAXIMUM) != 0) {
+					frame.setMaximum(true);
+				}
+				if ((flags[i] & ICON) != 0) {
+					frame.setIcon(true);
+				}
+			} catch (PropertyVetoException e) {
+				// Leave the frame as it is
+			}
+			frame.setVisible(true);
+			frames[i] = frame;
+		}
+
+		final int[] zOrder = new int[count];
+		for (int i = 0; i < count; i++) {
+			zOrder[i] = readVarInt(data);
+			if (zOrder[i] < 0 || zOrder[i] >= count) {
+				throw new StreamCorruptedException("Bad stacking order");
+			}
+		}
+
+		desktopPane.batch(new Runnable() {
+			@Override
+			public void run() {
+				addFrames(desktopPane, frames, layers, flags, iconBounds, zOrder);
+			}
+		});
+
+		List<MDIDesktopFrame> restored = new ArrayList<MDIDesktopFrame>(count);
+		for (MDIDesktopFrame frame : frames) {
+			restored.add(frame);
+		}
+		return restored;
+	}
+
+	private static void addFrames(MDIDesktopPane desktopPane,
+			MDIDesktopFrame[] frames, int[] layers, int[] flags,
+			Rectangle[] iconBounds, int[] zOrder) {
+		// Adding each component at the back of its layer, front to back,
+		// rebuilds the saved stacking order
+		for (int i = 0; i < zOrder.length; i++) {
+			int index = zOrder[i];
+			MDIDesktopFrame frame = frames[index];
+			Integer layer = Integer.valueOf(layers[index]);
+			frame.setLayer(layer);
+			if (frame.isIcon()) {
+				JDesktopIcon icon = frame.getDesktopIcon();
+				JLayeredPane.putLayer(icon, layers[index]);
+				icon.setBounds(iconBounds[index]);
+				desktopPane.add(icon, layer);
+			} else {
+				desktopPane.add((Component) frame, layer);
+			}
+			if (frame.isMaximum() && !frame.isIcon()) {
+				frame.setNormalBounds(frame.getBounds());
+				frame.setBounds(0, 0, desktopPane.getWidth(),
+						desktopPane.getHeight());
+			}
+			if (frame.hasAsyncContent()) {
+				frame.loadContentAsync();
+			}
+		}
+
+		for (int i = 0; i < frames.length; i++) {
+			if ((flags[i] & SELECTED) != 0 && !frames[i].isIcon()) {
+				try {
+					frames[i].setSelected(true);
+				} catch (PropertyVetoException e) {
+					// A modal child took the selection instead
+				}
+				break;
+			}
+		}
+	}
+
+	private static void writeBounds(DataOutputStream data, Rectangle bounds)
+			throws IOException {
+		writeSignedVarInt(data, bounds.x);
+		writeSignedVarInt(data, bounds.y);
+		writeVarInt(data, bounds.width);
+		writeVarInt(data, bounds.height);
+	}
+
+	private static Rectangle readBounds(DataInputStream data)
+			throws IOException {
+		int x = readSignedVarInt(data);
+		int y = readSignedVarInt(data);
+		int width = readVarInt(data);
+		int height = readVarInt(data);
+		return new Rectangle(x, y, width, height);
+	}
+
+	private static void writeVarInt(DataOutputStream data, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			data.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		data.writeByte(value);
+	}
+
+	private static void writeSignedVarInt(DataOutputStream data, int value)
+			throws IOException {
+		writeVarInt(data, (value << 1) ^ (value >> 31));
+	}
+
+	private static int readVarInt(DataInputStream data) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = data.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StreamCorruptedException("Malformed number");
+	}
+
+	private static int readCount(DataInputStream data) throws IOException {
+		int count = readVarInt(data);
+		if (count < 0) {
+			throw new StreamCorruptedException("Bad count " + count);
+		}
+		return count;
+	}
+
+	private static int readSignedVarInt(DataInputStream data)
+			throws IOException {
+		int value = readVarInt(data);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
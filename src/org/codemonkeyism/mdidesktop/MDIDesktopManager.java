@@ -4,18 +4,18 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Insets;
 import java.awt.Rectangle;
-import java.awt.font.FontRenderContext;
-import java.awt.font.TextLayout;
-import java.awt.geom.Rectangle2D;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.DefaultDesktopManager;
 import javax.swing.JComponent;
+import javax.swing.JDesktopPane;
 import javax.swing.JInternalFrame;
 import javax.swing.JScrollPane;
 import javax.swing.JViewport;
-import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 
+import org.codemonkeyism.mdidesktop.MDIDesktopMetrics.Operation;
+
 /**
  * Class used to replace the standard DesktopManager for JDesktopPane. Used to
  * provide scrollbar functionality.
@@ -28,8 +28,20 @@ public class MDIDesktopManager extends DefaultDesktopManager {
 
 	private static final int MIN_ICONIFIED_WIDTH = 150;
 
+	private static final MDIDesktopMetrics METRICS = MDIDesktopMetrics.getInstance();
+
 	private MDIDesktopPane desktop;
 
+	private MDIDesktopExtentTracker extentTracker;
+
+	private MDIDesktopResizeScheduler resizeScheduler;
+
+	private MDIDesktopTitleWidthCache titleWidths;
+
+	private MDIDesktopDragOverlay dragOverlay;
+
+	private boolean gestureInProgress;
+
 	/**
 	 * Construct an MDI Desktop Manager
 	 * 
@@ -37,6 +49,73 @@ public class MDIDesktopManager extends DefaultDesktopManager {
 	 */
 	public MDIDesktopManager(MDIDesktopPane desktop) {
 		this.desktop = desktop;
+		extentTracker = new MDIDesktopExtentTracker(desktop, new Runnable() {
+			public void run() {
+				// A drag or resize asks for a pass of its own when it ends
+				if (!gestureInProgress) {
+					resizeDesktop();
+				}
+			}
+		});
+		extentTracker.install();
+		resizeScheduler = new MDIDesktopResizeScheduler(new Runnable() {
+			public void run() {
+				resizeDesktopNow();
+			}
+		});
+		titleWidths = new MDIDesktopTitleWidthCache(desktop);
+	}
+
+	/**
+	 * Forget all measured frame title widths. Called when the look and feel,
+	 * and with it the title font, changes.
+	 */
+	void clearTitleWidthCache() {
+		titleWidths.clear();
+	}
+
+	/**
+	 * Get the scheduler that coalesces desktop resizes
+	 * 
+	 * @return resizeScheduler
+	 */
+	public MDIDesktopResizeScheduler getResizeScheduler() {
+		return resizeScheduler;
+	}
+
+	/**
+	 * Throw away the tracked desktop extent so the next resize does a full scan
+	 * of the desktop. Only needed if frames have been moved in a way that does
+	 * not fire component events.
+	 */
+	public void invalidateDesktopExtent() {
+		extentTracker.invalidate();
+	}
+
+	/**
+	 * Activate a frame, scrolling it into view if it was selected by the
+	 * program rather than clicked on
+	 * 
+	 * @param f
+	 */
+	@Override
+	public void activateFrame(JInternalFrame f) {
+		super.activateFrame(f);
+		if (f.isSelected()) {
+			desktop.getFrameRevealer().frameActivated(f);
+		}
+	}
+
+	/**
+	 * Begin resizing frame
+	 * 
+	 * @param f
+	 * @param direction
+	 */
+	@Override
+	public void beginResizingFrame(JComponent f, int direction) {
+		gestureInProgress = true;
+		super.beginResizingFrame(f, direction);
 	}
 
 	/**
@@ -45,20 +124,99 @@ public class MDIDesktopManager extends DefaultDesktopManager {
 	 * @param resizingFrame
 	 */
 	public void endResizingFrame(JComponent resizingFrame) {
+		gestureInProgress = false;
 		super.endResizingFrame(resizingFrame);
 		resizeDesktop();
 	}
 
+	/**
+	 * Begin dragging frame. In ghost and adaptive drag modes this may put an
+	 * overlay up to drag in place of the frame.
+	 * 
+	 * @param f
+	 */
+	@Override
+	public void beginDraggingFrame(JComponent f) {
+		gestureInProgress = true;
+		if (dragOverlay != null) {
+			dragOverlay.finish();
+			dragOverlay = null;
+		}
+		int mode = chooseDragMode(f);
+		if (mode == MDIDesktopPane.GHOST_DRAG_MODE
+				|| (mode == JDesktopPane.OUTLINE_DRAG_MODE && desktop
+						.getDragMode() == MDIDesktopPane.ADAPTIVE_DRAG_MODE)) {
+			dragOverlay = new MDIDesktopDragOverlay(desktop,
+					(JInternalFrame) f,
+					mode == MDIDesktopPane.GHOST_DRAG_MODE);
+			return;
+		}
+		super.beginDraggingFrame(f);
+	}
+
+	/**
+	 * Drag frame, or its overlay
+	 * 
+	 * @param f
+	 * @param newX
+	 * @param newY
+	 */
+	@Override
+	public void dragFrame(JComponent f, int newX, int newY) {
+		if (dragOverlay != null && dragOverlay.getFrame() == f) {
+			dragOverlay.moveTo(newX, newY);
+			return;
+		}
+		super.dragFrame(f, newX, newY);
+	}
+
 	/**
 	 * End dragging frame
 	 * 
 	 * @param draggingFrame
 	 */
 	public void endDraggingFrame(JComponent draggingFrame) {
-		super.endDraggingFrame(draggingFrame);
+		gestureInProgress = false;
+		if (dragOverlay != null && dragOverlay.getFrame() == draggingFrame) {
+			Rectangle bounds = dragOverlay.finish();
+			dragOverlay = null;
+			setBoundsForFrame(draggingFrame, bounds.x, bounds.y, bounds.width,
+					bounds.height);
+		} else {
+			super.endDraggingFrame(draggingFrame);
+		}
 		resizeDesktop();
 	}
 
+	/**
+	 * The drag style for a frame: the desktop's drag mode, or for
+	 * <code>ADAPTIVE_DRAG_MODE</code> live, ghost or outline depending on how
+	 * long the frame took to paint last time
+	 * 
+	 * @param f
+	 * @return drag mode
+	 */
+	protected int chooseDragMode(JComponent f) {
+		int mode = desktop.getDragMode();
+		if (!(f instanceof JInternalFrame)) {
+			return JDesktopPane.LIVE_DRAG_MODE;
+		}
+		if (mode != MDIDesktopPane.ADAPTIVE_DRAG_MODE) {
+			return mode;
+		}
+		if (!(f instanceof MDIDesktopFrame)) {
+			return JDesktopPane.LIVE_DRAG_MODE;
+		}
+		long cost = ((MDIDesktopFrame) f).getPaintCostNanos();
+		if (cost <= TimeUnit.MILLISECONDS.toNanos(desktop.getLiveDragLimit())) {
+			return JDesktopPane.LIVE_DRAG_MODE;
+		}
+		if (cost <= TimeUnit.MILLISECONDS.toNanos(desktop.getGhostDragLimit())) {
+			return MDIDesktopPane.GHOST_DRAG_MODE;
+		}
+		return JDesktopPane.OUTLINE_DRAG_MODE;
+	}
+
 	/**
 	 * Set the normal size of the desktop
 	 */
@@ -127,58 +285,50 @@ public class MDIDesktopManager extends DefaultDesktopManager {
 	 * @return
 	 */
 	private int computeDesktopIconWidth(int minWidth, String title) {
-		FontRenderContext frc = new FontRenderContext(null, false, false);
 		Font font = UIManager.getFont("InternalFrame.titleFont");
-
-		int maxTitleWidth = 0;
-
-		Rectangle2D r = new TextLayout(title, font, frc).getBounds();
-		int textWidth = (int) r.getWidth();
-
-		if (textWidth > maxTitleWidth) {
-			maxTitleWidth = textWidth;
-		}
-		int totalWidth = minWidth + maxTitleWidth;
-		return totalWidth;
+		return minWidth + titleWidths.getWidth(title, font);
 	}
 
 	/**
-	 * Calculate the needed internal desktop size and set it
+	 * Calculate the needed internal desktop size and set it. Requests are
+	 * coalesced so that any number of them made before the next event dispatch
+	 * pass result in a single resize.
 	 */
 	protected void resizeDesktop() {
-		SwingUtilities.invokeLater(new Runnable() {
-			public void run() {
-				int x = 0;
-				int y = 0;
-				JScrollPane scrollPane = getScrollPane();
-				Insets scrollInsets = getScrollPaneInsets();
-
-				if (scrollPane != null) {
-					JInternalFrame allFrames[] = desktop.getAllFrames();
-					for (int i = 0; i < allFrames.length; i++) {
-						if (allFrames[i].getX() + allFrames[i].getWidth() > x) {
-							x = allFrames[i].getX() + allFrames[i].getWidth();
-						}
-						if (allFrames[i].getY() + allFrames[i].getHeight() > y) {
-							y = allFrames[i].getY() + allFrames[i].getHeight();
-						}
-					}
-					Dimension d = scrollPane.getVisibleRect().getSize();
-					if (scrollPane.getBorder() != null) {
-						d.setSize(d.getWidth() - scrollInsets.left
-								- scrollInsets.right, d.getHeight()
-								- scrollInsets.top - scrollInsets.bottom);
-					}
-
-					if (x <= d.getWidth())
-						x = ((int) d.getWidth()) - 20;
-					if (y <= d.getHeight())
-						y = ((int) d.getHeight()) - 20;
-					desktop.setAllSize(x, y);
-					scrollPane.invalidate();
-					scrollPane.validate();
+		resizeScheduler.request();
+	}
+
+	/**
+	 * Calculate the needed internal desktop size and set it straight away
+	 */
+	void resizeDesktopNow() {
+		long start = METRICS.begin(Operation.RESIZE_DESKTOP);
+		try {
+			int x = 0;
+			int y = 0;
+			JScrollPane scrollPane = getScrollPane();
+			Insets scrollInsets = getScrollPaneInsets();
+
+			if (scrollPane != null) {
+				x = extentTracker.getMaxRight();
+				y = extentTracker.getMaxBottom();
+				Dimension d = scrollPane.getVisibleRect().getSize();
+				if (scrollPane.getBorder() != null) {
+					d.setSize(d.getWidth() - scrollInsets.left
+							- scrollInsets.right, d.getHeight()
+							- scrollInsets.top - scrollInsets.bottom);
 				}
+
+				if (x <= d.getWidth())
+					x = ((int) d.getWidth()) - 20;
+				if (y <= d.getHeight())
+					y = ((int) d.getHeight()) - 20;
+				desktop.setAllSize(x, y);
+				scrollPane.invalidate();
+				scrollPane.validate();
 			}
-		});
+		} finally {
+			METRICS.end(Operation.RESIZE_DESKTOP, start);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+
+/**
+ * Counters and latency histograms for the desktop's hot paths. Recording is
+ * allocation-free, so instrumentation stays switched on by default.
+ *
+ * Instrumented code brackets an operation with <code>begin</code> and
+ * <code>end</code>. Operations on the event dispatch thread are also kept on a
+ * small stack so that the stall detector can say which frame operation was
+ * running when the event dispatch thread stopped responding.
+ *
+ * Read the numbers with <code>snapshot()</code>, or over JMX after
+ * <code>registerMBean()</code>.
+ *
+ * @author Dean
+ */
+public final class MDIDesktopMetrics implements MDIDesktopMetricsMXBean {
+
+	/**
+	 * The instrumented operations
+	 */
+	public enum Operation {
+		ADD_FRAME, REMOVE_FRAME, TILE, CASCADE, LAYOUT, MINIMISE_ALL, RESIZE_DESKTOP, GLASS_PANE_SHOW, GLASS_PANE_HIDE, MODAL_OPEN, MODAL_CLOSE, RESTORE_LAYOUT, EVENT_DISPATCH
+	}
+
+	public static final String OBJECT_NAME = "org.codemonkeyism.mdidesktop:type=Metrics";
+
+	private static final MDIDesktopMetrics INSTANCE = new MDIDesktopMetrics();
+
+	private static final int MAX_NESTING = 32;
+
+	private final MDIDesktopLatencyHistogram[] histograms;
+
+	private volatile boolean enabled = true;
+
+	// Operations running on the event dispatch thread, innermost last. Only
+	// ever written from the event dispatch thread.
+	private final Operation[] edtOperations = new Operation[MAX_NESTING];
+	private int edtDepth;
+	private volatile Operation currentEdtOperation;
+
+	private final AtomicLong stallCount = new AtomicLong();
+	private final AtomicLong longestStallNanos = new AtomicLong();
+	private volatile Operation lastStallOperation;
+
+	private MDIDesktopMetrics() {
+		Operation[] operations = Operation.values();
+		histograms = new MDIDesktopLatencyHistogram[operations.length];
+		for (int i = 0; i < operations.length; i++) {
+			histograms[i] = new MDIDesktopLatencyHistogram();
+		}
+	}
+
+	/**
+	 * Get the desktop metrics
+	 *
+	 * @return metrics
+	 */
+	public static MDIDesktopMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Mark the start of an operation
+	 *
+	 * @param operation
+	 * @return start time to hand to <code>end</code>, 0 if disabled
+	 */
+	public long begin(Operation operation) {
+		if (!enabled) {
+			return 0;
+		}
+		if (SwingUtilities.isEventDispatchThread()) {
+			if (edtDepth < MAX_NESTING) {
+				edtOperations[edtDepth] = operation;
+			}
+			edtDepth++;
+			currentEdtOperation = operation;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * Mark the end of an operation started with <code>begin</code>
+	 *
+	 * @param operation
+	 * @param start
+	 */
+	public void end(Operation operation, long start) {
+		if (start == 0) {
+			return;
+		}
+		histograms[operation.ordinal()].record(System.nanoTime() - start);
+		if (SwingUtilities.isEventDispatchThread() && edtDepth > 0) {
+			edtDepth--;
+			if (edtDepth < MAX_NESTING) {
+				edtOperations[edtDepth] = null;
+			}
+			int top = Math.min(edtDepth, MAX_NESTING) - 1;
+			currentEdtOperation = top >= 0 ? edtOperations[top] : null;
+		}
+	}
+
+	/**
+	 * Record a duration measured elsewhere
+	 *
+	 * @param operation
+	 * @param nanos
+	 */
+	public void record(Operation operation, long nanos) {
+		if (enabled) {
+			histograms[operation.ordinal()].record(nanos);
+		}
+	}
+
+	/**
+	 * The innermost frame operation running on the event dispatch thread
+	 *
+	 * @return operation, or null if none is running
+	 */
+	public Operation getCurrentEdtOperation() {
+		return currentEdtOperation;
+	}
+
+	/**
+	 * Called by the stall detector once an event that stalled the event
+	 * dispatch thread has finished
+	 *
+	 * @param stalledNanos
+	 *            how long the event took
+	 * @param operation
+	 */
+	void recordStall(long stalledNanos, Operation operation) {
+		stallCount.incrementAndGet();
+		lastStallOperation = operation;
+		long longest = longestStallNanos.get();
+		while (stalledNanos > longest
+				&& !longestStallNanos.compareAndSet(longest, stalledNanos)) {
+			longest = longestStallNanos.get();
+		}
+	}
+
+	/**
+	 * Get the latency histogram for an operation
+	 *
+	 * @param operation
+	 * @return histogram
+	 */
+	public MDIDesktopLatencyHistogram getHistogram(Operation operation) {
+		return histograms[operation.ordinal()];
+	}
+
+	/**
+	 * Get the statistics for every operation as they are now
+	 *
+	 * @return statistics by operation
+	 */
+	public Map<Operation, MDIDesktopOperationStats> snapshot() {
+		Map<Operation, MDIDesktopOperationStats> snapshot = new EnumMap<Operation, MDIDesktopOperationStats>(
+				Operation.class);
+		for (Operation operation : Operation.values()) {
+			snapshot.put(operation, MDIDesktopOperationStats.of(
+					operation.name(), histograms[operation.ordinal()]));
+		}
+		return Collections.unmodifiableMap(snapshot);
+	}
+
+	@Override
+	public MDIDesktopOperationStats[] getOperations() {
+		return snapshot().values().toArray(new MDIDesktopOperationStats[0]);
+	}
+
+	@Override
+	public long getStallCount() {
+		return stallCount.get();
+	}
+
+	@Override
+	public long getLongestStallNanos() {
+		return longestStallNanos.get();
+	}
+
+	@Override
+	public String getLastStallOperation() {
+		Operation operation = lastStallOperation;
+		return operation == null ? null : operation.name();
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	@Override
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	@Override
+	public void reset() {
+		for (MDIDesktopLatencyHistogram histogram : histograms) {
+			histogram.reset();
+		}
+		stallCount.set(0);
+		longestStallNanos.set(0);
+		lastStallOperation = null;
+	}
+
+	/**
+	 * Publish the metrics on the platform MBean server
+	 */
+	public void registerMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!server.isRegistered(name)) {
+				server.registerMBean(this, name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Remove the metrics from the platform MBean server
+	 */
+	public void unregisterMBean() {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package org.codemonkeyism.mdidesktop;
+
+/**
+ * JMX view of the desktop instrumentation. Registered under
+ * <code>org.codemonkeyism.mdidesktop:type=Metrics</code> by
+ * <code>MDIDesktopMetrics.registerMBean()</code>.
+ *
+ * @author Dean
+ */
+public interface MDIDesktopMetricsMXBean {
+
+	/**
+	 * Latency statistics for every instrumented operation
+	 *
+	 * @return operations
+	 */
+	MDIDesktopOperationStats[] getOperations();
+
+	/**
+	 * How many times the event dispatch thread has stalled
+	 *
+	 * @return stallCount
+	 */
+	long getStallCount();
+
+	/**
+	 * The longest event dispatch stall seen, in nanoseconds
+	 *
+	 * @return longestStallNanos
+	 */
+	long getLongestStallNanos();
+
+	/**
+	 * The frame operation that was running during the last stall
+	 *
+	 * @return operation name, or null if none was running
+	 */
+	String getLastStallOperation();
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+	/**
+	 * Forget everything recorded so far
+	 */
+	void reset();
+}
@@ -0,0 +1,394 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.beans.PropertyVetoException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JDesktopPane;
+
+/**
+ * Every modal frame open on one desktop. A frame may have several modal
+ * children open at once, children may have modal children of their own, and
+ * unrelated frames may each have their own modal children at the same time.
+ * A frame with its modal descendants forms a modal group.
+ *
+ * A frame is blocked while it has at least one modal child open. The blocked
+ * frames are kept in a set and every frame knows the topmost modal above it,
+ * the most recently opened frame in its part of the group that is not itself
+ * blocked, so both questions are answered in constant time. Input aimed at a
+ * blocked frame goes straight to that frame instead of being passed down the
+ * chain one level at a time.
+ *
+ * Frames register themselves as they are shown and closed. Use the event
+ * dispatch thread.
+ *
+ * @author Dean
+ */
+public final class MDIDesktopModalStack {
+
+	private static final String CLIENT_PROPERTY = MDIDesktopModalStack.class
+			.getName();
+
+	private final Map<MDIDesktopFrame, Node> nodes = new IdentityHashMap<MDIDesktopFrame, Node>();
+	private final Set<MDIDesktopFrame> blocked = Collections
+			.newSetFromMap(new IdentityHashMap<MDIDesktopFrame, Boolean>());
+
+	// Open modal frames, oldest first
+	private Node head;
+	private Node tail;
+	private int modalCount;
+
+	private boolean propagatingIcon;
+
+	/**
+	 * Get the modal stack of a desktop, creating it the first time
+	 *
+	 * @param desktop
+	 * @return modalStack
+	 */
+	public static MDIDesktopModalStack forDesktop(JDesktopPane desktop) {
+		checkNotNull(desktop);
+		Object stack = desktop.getClientProperty(CLIENT_PROPERTY);
+		if (stack instanceof MDIDesktopModalStack) {
+			return (MDIDesktopModalStack) stack;
+		}
+		MDIDesktopModalStack created = new MDIDesktopModalStack();
+		desktop.putClientProperty(CLIENT_PROPERTY, created);
+		return created;
+	}
+
+	/**
+	 * Does the frame have a modal child open?
+	 *
+	 * @param frame
+	 * @return blocked
+	 */
+	public boolean isBlocked(MDIDesktopFrame frame) {
+		return blocked.contains(frame);
+	}
+
+	/**
+	 * Is the frame open as a modal child of another frame?
+	 *
+	 * @param frame
+	 * @return modal
+	 */
+	public boolean isModal(MDIDesktopFrame frame) {
+		Node node = nodes.get(frame);
+		return node != null && node.owner != null;
+	}
+
+	/**
+	 * The most recently opened modal frame on the desktop
+	 *
+	 * @return frame, or null if there are none
+	 */
+	public MDIDesktopFrame getTopModal() {
+		return tail == null ? null : tail.frame;
+	}
+
+	/**
+	 * The frame that input aimed at this frame should go to: the most recently
+	 * opened unblocked frame among its modal descendants, or the frame itself
+	 * if it is not blocked
+	 *
+	 * @param frame
+	 * @return frame
+	 */
+	public MDIDesktopFrame getTopModal(MDIDesktopFrame frame) {
+		Node node = nodes.get(frame);
+		return node == null ? frame : node.top.frame;
+	}
+
+	/**
+	 * The frame this one is open as a modal child of
+	 *
+	 * @param frame
+	 * @return owner, or null
+	 */
+	public MDIDesktopFrame getModalOwner(MDIDesktopFrame frame) {
+		Node node = nodes.get(frame);
+		return node == null || node.owner == null ? null : node.owner.frame;
+	}
+
+	/**
+	 * The frame at the bottom of this frame's modal group
+	 *
+	 * @param frame
+	 * @return root, the frame itself if it is in no group
+	 */
+	public MDIDesktopFrame getGroupRoot(MDIDesktopFrame frame) {
+		Node node = nodes.get(frame);
+		return node == null ? frame : node.root.frame;
+	}
+
+	/**
+	 * The modal children open on a frame, oldest first
+	 *
+	 * @param frame
+	 * @return children
+	 */
+	public List<MDIDesktopFrame> getModalChildren(MDIDesktopFrame frame) {
+		Node node = nodes.get(frame);
+		if (node == null) {
+			return Collections.emptyList();
+		}
+		List<MDIDesktopFrame> children = new ArrayList<MDIDesktopFrame>(
+				node.children.size());
+		for (Node child : node.children) {
+			children.add(child.frame);
+		}
+		return children;
+	}
+
+	/**
+	 * How many modal frames are open on the desktop
+	 *
+	 * @return modalCount
+	 */
+	public int getModalCount() {
+		return modalCount;
+	}
+
+	/**
+	 * Open a frame as a modal child of another
+	 *
+	 * @param owner
+	 * @param child
+	 * @return true if this blocked the owner, which was not blocked before
+	 */
+	boolean open(MDIDesktopFrame owner, MDIDesktopFrame child) {
+		checkNotNull(owner);
+		checkNotNull(child);
+		checkArgument(owner != child, "A frame cannot be modal over itself");
+
+		Node ownerNode = nodeFor(owner);
+		Node childNode = nodeFor(child);
+		for (Node n = ownerNode; n != null; n = n.owner) {
+			checkArgument(n != childNode,
+					"A frame cannot be modal over its own modal owner");
+		}
+
+		boolean wasBlocked = !ownerNode.children.isEmpty();
+		if (childNode.owner != null && childNode.owner != ownerNode) {
+			unlink(childNode);
+		}
+		childNode.owner = ownerNode;
+		ownerNode.children.remove(childNode);
+		ownerNode.children.addLast(childNode);
+		// The newest modal is now the one in front at every level
+		for (Node n = ownerNode; n.owner != null; n = n.owner) {
+			n.owner.children.remove(n);
+			n.owner.children.addLast(n);
+		}
+		setRoot(childNode, ownerNode.root);
+		refreshTop(ownerNode);
+
+		if (!childNode.listed) {
+			append(childNode);
+		}
+		blocked.add(owner);
+		owner.childFrame = child;
+		return !wasBlocked;
+	}
+
+	/**
+	 * Take a frame off the stack as it closes. Any modal children it still
+	 * has open are handed to its own owner, so the group stays blocked.
+	 *
+	 * @param frame
+	 * @return the owner if it is no longer blocked, otherwise null
+	 */
+	MDIDesktopFrame close(MDIDesktopFrame frame) {
+		Node node = nodes.remove(frame);
+		if (node == null) {
+			return null;
+		}
+		Node owner = node.owner;
+		for (Node child : node.children) {
+			child.owner = owner;
+			if (owner != null) {
+				owner.children.addLast(child);
+			} else {
+				setRoot(child, child);
+				unlist(child);
+				discardIfUnused(child);
+			}
+		}
+		node.children.clear();
+		blocked.remove(frame);
+		frame.childFrame = null;
+		unlist(node);
+
+		if (owner == null) {
+			return null;
+		}
+		owner.children.remove(node);
+		return afterChildRemoved(owner);
+	}
+
+	/**
+	 * Cut a frame loose from all its modal children, which become the roots
+	 * of groups of their own
+	 *
+	 * @param owner
+	 * @return true if the frame was blocked
+	 */
+	boolean releaseChildren(MDIDesktopFrame owner) {
+		Node node = nodes.get(owner);
+		if (node == null || node.children.isEmpty()) {
+			return false;
+		}
+		for (Node child : node.children.toArray(new Node[0])) {
+			unlink(child);
+			setRoot(child, child);
+			unlist(child);
+			discardIfUnused(child);
+		}
+		return true;
+	}
+
+	/**
+	 * Iconify or restore every frame in a frame's modal group, so that a group
+	 * always moves together. Changes this makes are not propagated again.
+	 *
+	 * @param frame
+	 *            the frame that has just changed
+	 * @param icon
+	 */
+	void setGroupIcon(MDIDesktopFrame frame, boolean icon) {
+		Node node = nodes.get(frame);
+		if (node == null || propagatingIcon) {
+			return;
+		}
+		propagatingIcon = true;
+		try {
+			ArrayDeque<Node> pending = new ArrayDeque<Node>();
+			pending.add(node.root);
+			while (!pending.isEmpty()) {
+				Node n = pending.poll();
+				pending.addAll(n.children);
+				if (n.frame != frame && n.frame.isIcon() != icon) {
+					try {
+						n.frame.setIcon(icon);
+					} catch (PropertyVetoException e) {
+						// Leave this one as it is
+					}
+				}
+			}
+		} finally {
+			propagatingIcon = false;
+		}
+	}
+
+	private Node nodeFor(MDIDesktopFrame frame) {
+		Node node = nodes.get(frame);
+		if (node == null) {
+			node = new Node(frame);
+			nodes.put(frame, node);
+		}
+		return node;
+	}
+
+	private void unlink(Node node) {
+		Node owner = node.owner;
+		owner.children.remove(node);
+		node.owner = null;
+		afterChildRemoved(owner);
+	}
+
+	private MDIDesktopFrame afterChildRemoved(Node owner) {
+		refreshTop(owner);
+		if (!owner.children.isEmpty()) {
+			owner.frame.childFrame = owner.children.peekLast().frame;
+			return null;
+		}
+		blocked.remove(owner.frame);
+		owner.frame.childFrame = null;
+		discardIfUnused(owner);
+		return owner.frame;
+	}
+
+	private void discardIfUnused(Node node) {
+		if (node.owner == null && node.children.isEmpty()) {
+			nodes.remove(node.frame);
+		}
+	}
+
+	private void refreshTop(Node from) {
+		for (Node n = from; n != null; n = n.owner) {
+			n.top = n.children.isEmpty() ? n : n.children.peekLast().top;
+		}
+	}
+
+	private static void setRoot(Node subtree, Node root) {
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.add(subtree);
+		while (!pending.isEmpty()) {
+			Node n = pending.poll();
+			n.root = root;
+			pending.addAll(n.children);
+		}
+	}
+
+	private void append(Node node) {
+		node.listed = true;
+		node.previous = tail;
+		node.next = null;
+		if (tail == null) {
+			head = node;
+		} else {
+			tail.next = node;
+		}
+		tail = node;
+		modalCount++;
+	}
+
+	private void unlist(Node node) {
+		if (!node.listed) {
+			return;
+		}
+		if (node.previous == null) {
+			head = node.next;
+		} else {
+			node.previous.next = node.next;
+		}
+		if (node.next == null) {
+			tail = node.previous;
+		} else {
+			node.next.previous = node.previous;
+		}
+		node.previous = null;
+		node.next = null;
+		node.listed = false;
+		modalCount--;
+	}
+
+	private static final class Node {
+
+		final MDIDesktopFrame frame;
+		final ArrayDeque<Node> children = new ArrayDeque<Node>(2);
+		Node owner;
+		Node root;
+		Node top;
+
+		// Place in the list of open modal frames
+		boolean listed;
+		Node previous;
+		Node next;
+
+		Node(MDIDesktopFrame frame) {
+			this.frame = frame;
+			this.root = this;
+			this.top = this;
+		}
+	}
+}
@@ -0,0 +1,85 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Point in time statistics for one instrumented desktop operation. All times
+ * are in nanoseconds.
+ *
+ * @author Dean
+ */
+public final class MDIDesktopOperationStats {
+
+	private final String operation;
+	private final long count;
+	private final long meanNanos;
+	private final long p50Nanos;
+	private final long p90Nanos;
+	private final long p99Nanos;
+	private final long p999Nanos;
+	private final long maxNanos;
+
+	@ConstructorProperties({ "operation", "count", "meanNanos", "p50Nanos",
+			"p90Nanos", "p99Nanos", "p999Nanos", "maxNanos" })
+	public MDIDesktopOperationStats(String operation, long count,
+			long meanNanos, long p50Nanos, long p90Nanos, long p99Nanos,
+			long p999Nanos, long maxNanos) {
+		this.operation = operation;
+		this.count = count;
+		this.meanNanos = meanNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+		this.p999Nanos = p999Nanos;
+		this.maxNanos = maxNanos;
+	}
+
+	static MDIDesktopOperationStats of(String operation,
+			MDIDesktopLatencyHistogram histogram) {
+		return new MDIDesktopOperationStats(operation, histogram.getCount(),
+				histogram.getMeanNanos(),
+				histogram.getValueAtPercentile(50),
+				histogram.getValueAtPercentile(90),
+				histogram.getValueAtPercentile(99),
+				histogram.getValueAtPercentile(99.9), histogram.getMaxNanos());
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMeanNanos() {
+		return meanNanos;
+	}
+
+	public long getP50Nanos() {
+		return p50Nanos;
+	}
+
+	public long getP90Nanos() {
+		return p90Nanos;
+	}
+
+	public long getP99Nanos() {
+		return p99Nanos;
+	}
+
+	public long getP999Nanos() {
+		return p999Nanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: count=%d mean=%dus p50=%dus p99=%dus max=%dus",
+				operation, count, meanNanos / 1000, p50Nanos / 1000,
+				p99Nanos / 1000, maxNanos / 1000);
+	}
+}
@@ -1,11 +1,15 @@
 package org.codemonkeyism.mdidesktop;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyVetoException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
@@ -20,13 +24,35 @@ public class MDIDesktopOptionFrame extends MDIDesktopFrame {
 
 	private static final long serialVersionUID = 1L;
 
+	private JOptionPane optionPane;
+
+	private final PropertyChangeListener valueListener = new PropertyChangeListener() {
+
+		public void propertyChange(PropertyChangeEvent event) {
+			// Let the defaultCloseOperation handle the closing
+			// if the user closed the iframe without selecting a button
+			// (newValue = null in that case). Otherwise, close the dialog.
+			if (isVisible()
+					&& event.getSource() == optionPane
+					&& event.getPropertyName().equals(
+							JOptionPane.VALUE_PROPERTY)) {
+				returnValue = event.getNewValue();
+				try {
+					setClosed(true);
+				} catch (PropertyVetoException ex) {
+					// Well its an exception but in reality its no
+					// exceptional behaviour!
+				}
+				setVisible(false);
+			}
+		}
+	};
+
 	public MDIDesktopOptionFrame(final JComponent parentComponent,
 			final JOptionPane optionPane, String title) {
 
 		super(parentComponent, title, false, false, false, false);
 		init();
-		
-		optionPane.setValue(null); // default to null
 
 		if (desktopPane == null
 				&& (parentComponent == null || (parentComponent.getParent() == null))) {
@@ -37,33 +63,82 @@ public class MDIDesktopOptionFrame extends MDIDesktopFrame {
 		// overide default layout
 		getContentPane().setLayout(new BorderLayout());
 
+		setOptionPane(optionPane);
+	}
+
+	/**
+	 * Show an option pane in this frame, replacing the one shown before. Used
+	 * to give a pooled frame its next question.
+	 * 
+	 * @param optionPane
+	 */
+	public void setOptionPane(JOptionPane optionPane) {
+		checkNotNull(optionPane);
+		removeOptionPane();
+
+		optionPane.setValue(null); // default to null
+		returnValue = null;
+
 		// Add pane to frame
+		this.optionPane = optionPane;
 		getContentPane().add(optionPane, BorderLayout.CENTER);
 
-		final MDIDesktopOptionFrame frame = this;
-
 		// Add listener for value changes
-		optionPane.addPropertyChangeListener(new PropertyChangeListener() {
-
-			public void propertyChange(PropertyChangeEvent event) {
-				// Let the defaultCloseOperation handle the closing
-				// if the user closed the iframe without selecting a button
-				// (newValue = null in that case). Otherwise, close the dialog.
-				if (frame.isVisible()
-						&& event.getSource() == optionPane
-						&& event.getPropertyName().equals(
-								JOptionPane.VALUE_PROPERTY)) {
-					try {
-						frame.setClosed(true);
-					} catch (PropertyVetoException ex) {
-						// Well its an exception but in reality its no
-						// exceptional behaviour!
-					}
-					frame.setVisible(false);
-				}
+		optionPane.addPropertyChangeListener(valueListener);
+	}
+
+	/**
+	 * Show the option pane and get the user's answer without blocking. The
+	 * future completes with the option pane's value: the chosen option, or
+	 * null if the frame was closed without choosing one.
+	 * 
+	 * @return answer
+	 */
+	@Override
+	public CompletableFuture<Object> showModal() {
+		if (!isShowingModal()) {
+			calculateBounds();
+		}
+		return super.showModal();
+	}
+
+	/**
+	 * Show the option pane and get the chosen option as a
+	 * <code>JOptionPane</code> constant, <code>YES_OPTION</code>,
+	 * <code>NO_OPTION</code> and so on, or <code>CLOSED_OPTION</code> if the
+	 * frame was closed without choosing. For option panes that use the
+	 * standard buttons.
+	 * 
+	 * @return option
+	 */
+	public CompletableFuture<Integer> showModalOption() {
+		return showModal().thenApply(new Function<Object, Integer>() {
+			@Override
+			public Integer apply(Object value) {
+				return value instanceof Integer ? (Integer) value
+						: Integer.valueOf(JOptionPane.CLOSED_OPTION);
 			}
 		});
 	}
+
+	public JOptionPane getOptionPane() {
+		return optionPane;
+	}
+
+	private void removeOptionPane() {
+		if (optionPane != null) {
+			optionPane.removePropertyChangeListener(valueListener);
+			getContentPane().remove(optionPane);
+			optionPane = null;
+		}
+	}
+
+	@Override
+	protected void resetForReuse() {
+		super.resetForReuse();
+		// Let the last answer go; the next user brings a new option pane
+		removeOptionPane();
+	}
 	
 	protected void init() {
         javax.swing.GroupLayout layout = new javax.swing.GroupLayout(getContentPane());
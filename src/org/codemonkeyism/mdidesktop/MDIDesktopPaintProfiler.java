@@ -0,0 +1,599 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.AWTEvent;
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.InvocationEvent;
+import java.awt.event.KeyEvent;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.AbstractAction;
+import javax.swing.JComponent;
+import javax.swing.JInternalFrame;
+import javax.swing.JLayeredPane;
+import javax.swing.JRootPane;
+import javax.swing.KeyStroke;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Times the painting of every <code>MDIDesktopFrame</code> on a desktop, its
+ * modal glass pane and the desktop's own background, so that the frames that
+ * make the desktop slow to repaint can be found.
+ *
+ * Each paint is recorded in a fixed size ring of samples per frame, so
+ * profiling allocates nothing as it goes, and is added to running totals by
+ * cause and by part of the frame. Times are self times: a glass pane painted
+ * as part of its frame's children is taken off the children's time.
+ *
+ * Ctrl+Shift+P shows an overlay of the frames that have spent most time
+ * painting over the last second. Ctrl+Shift+F writes the totals in the folded
+ * stack format read by flame graph tools to the temporary directory.
+ *
+ * Switch it on with <code>MDIDesktopPane.setPaintProfilingEnabled</code>.
+ * Use the event dispatch thread.
+ *
+ * @author Dean
+ */
+public class MDIDesktopPaintProfiler {
+
+	/**
+	 * Why a paint happened
+	 */
+	public enum Cause {
+		/** A repaint pass of the RepaintManager */
+		REPAINT,
+		/** Painted straight away while handling mouse or keyboard input */
+		INPUT,
+		/** Painted into an image, for a snapshot, drag ghost or printing */
+		OFFSCREEN,
+		/** Anything else */
+		OTHER
+	}
+
+	/**
+	 * Which part of the painting was timed
+	 */
+	public enum Phase {
+		BACKGROUND, COMPONENT, CHILDREN, GLASS_PANE
+	}
+
+	public static final int RING_SIZE = 128;
+
+	private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+	private static final int MAX_DEPTH = 32;
+	private static final int OVERLAY_ROWS = 10;
+	private static final int REFRESH_MILLIS = 500;
+
+	private static final String TOGGLE_ACTION = "mdidesktop.paintProfiler.toggle";
+	private static final String EXPORT_ACTION = "mdidesktop.paintProfiler.export";
+	private static final KeyStroke TOGGLE_KEY = KeyStroke.getKeyStroke(
+			KeyEvent.VK_P, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK);
+	private static final KeyStroke EXPORT_KEY = KeyStroke.getKeyStroke(
+			KeyEvent.VK_F, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK);
+
+	private final MDIDesktopPane desktop;
+	private final Tracker tracker;
+
+	private final Map<JInternalFrame, Source> sources = new IdentityHashMap<JInternalFrame, Source>();
+	private final Source background = new Source(null, "background");
+	// Totals of frames that have left the desktop, by name
+	private final Map<String, long[]> retired = new LinkedHashMap<String, long[]>();
+
+	// Time spent in paints nested inside each paint in progress
+	private final long[] nested = new long[MAX_DEPTH];
+	private int depth;
+
+	private final Overlay overlay = new Overlay();
+	private final Timer refresh;
+	private String status;
+
+	MDIDesktopPaintProfiler(MDIDesktopPane desktop) {
+		this.desktop = desktop;
+		this.tracker = new Tracker(desktop);
+		refresh = new Timer(REFRESH_MILLIS, new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				overlay.refresh();
+			}
+		});
+	}
+
+	void install() {
+		tracker.install();
+		desktop.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(TOGGLE_KEY,
+				TOGGLE_ACTION);
+		desktop.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(EXPORT_KEY,
+				EXPORT_ACTION);
+		desktop.getActionMap().put(TOGGLE_ACTION, new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				setOverlayVisible(!isOverlayVisible());
+			}
+		});
+		desktop.getActionMap().put(EXPORT_ACTION, new AbstractAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				exportToTempFile();
+			}
+		});
+	}
+
+	void uninstall() {
+		setOverlayVisible(false);
+		desktop.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).remove(
+				TOGGLE_KEY);
+		desktop.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).remove(
+				EXPORT_KEY);
+		desktop.getActionMap().remove(TOGGLE_ACTION);
+		desktop.getActionMap().remove(EXPORT_ACTION);
+		tracker.uninstall();
+	}
+
+	/**
+	 * Start timing a paint. Every call must be matched by a call to
+	 * <code>end</code>, even if the paint throws.
+	 *
+	 * @return start
+	 */
+	long begin() {
+		long start = System.nanoTime();
+		if (depth < MAX_DEPTH) {
+			nested[depth] = 0;
+		}
+		depth++;
+		return start;
+	}
+
+	/**
+	 * Finish timing a paint of a frame
+	 *
+	 * @param frame
+	 *            the frame painted, or null for the desktop background
+	 * @param phase
+	 * @param g
+	 *            the graphics painted to
+	 * @param start
+	 *            from <code>begin</code>
+	 */
+	void end(JInternalFrame frame, Phase phase, Graphics g, long start) {
+		long now = System.nanoTime();
+		long total = now - start;
+		depth--;
+		long self = total;
+		if (depth < MAX_DEPTH) {
+			self -= nested[depth];
+		}
+		if (depth > 0 && depth <= MAX_DEPTH) {
+			nested[depth - 1] += total;
+		}
+
+		Source source = frame == null ? background : sources.get(frame);
+		if (source != null) {
+			source.record(now, self, causeOf(g), phase);
+		}
+	}
+
+	/**
+	 * The frames that spent most time painting in the last second
+	 *
+	 * @param limit
+	 * @return offenders, worst first
+	 */
+	public List<Offender> getTopOffenders(int limit) {
+		long since = System.nanoTime() - WINDOW_NANOS;
+		List<Offender> offenders = new ArrayList<Offender>();
+		for (Source source : sources.values()) {
+			Offender o = source.recent(since);
+			if (o != null) {
+				offenders.add(o);
+			}
+		}
+		Offender o = background.recent(since);
+		if (o != null) {
+			offenders.add(o);
+		}
+		Collections.sort(offenders, WORST_FIRST);
+		return offenders.size() > limit ? new ArrayList<Offender>(
+				offenders.subList(0, limit)) : offenders;
+	}
+
+	/**
+	 * Write the self time of every frame, cause and phase since profiling
+	 * started, or since the last reset, as folded stacks: one line of
+	 * semicolon separated frames followed by microseconds
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeFlameGraph(Writer out) throws IOException {
+		Map<String, long[]> totals = new LinkedHashMap<String, long[]>();
+		totals.put(background.name, background.totals.clone());
+		for (Map.Entry<String, long[]> e : retired.entrySet()) {
+			totals.put(e.getKey(), e.getValue().clone());
+		}
+		for (Source source : sources.values()) {
+			long[] into = totals.get(source.name);
+			if (into == null) {
+				totals.put(source.name, source.totals.clone());
+			} else {
+				add(into, source.totals);
+			}
+		}
+
+		Cause[] causes = Cause.values();
+		Phase[] phases = Phase.values();
+		for (Map.Entry<String, long[]> e : totals.entrySet()) {
+			long[] t = e.getValue();
+			for (Cause cause : causes) {
+				for (Phase phase : phases) {
+					long micros = TimeUnit.NANOSECONDS.toMicros(t[slot(cause,
+							phase)]);
+					if (micros > 0) {
+						out.write("MDIDesktopPane;" + e.getKey() + ";"
+								+ cause.name() + ";" + phase.name() + " "
+								+ micros + "\n");
+					}
+				}
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Throw away every sample and total
+	 */
+	public void reset() {
+		for (Source source : sources.values()) {
+			source.clear();
+		}
+		background.clear();
+		retired.clear();
+	}
+
+	public void setOverlayVisible(boolean visible) {
+		if (visible == isOverlayVisible()) {
+			return;
+		}
+		if (visible) {
+			JRootPane rootPane = SwingUtilities.getRootPane(desktop);
+			if (rootPane == null) {
+				return;
+			}
+			rootPane.getLayeredPane().add(overlay, JLayeredPane.POPUP_LAYER);
+			overlay.refresh();
+			refresh.start();
+		} else {
+			refresh.stop();
+			JComponent parent = (JComponent) overlay.getParent();
+			Rectangle bounds = overlay.getBounds();
+			parent.remove(overlay);
+			parent.repaint(bounds);
+		}
+	}
+
+	public boolean isOverlayVisible() {
+		return overlay.getParent() != null;
+	}
+
+	private void exportToTempFile() {
+		try {
+			File file = File.createTempFile("mdidesktop-paint-", ".folded");
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					new FileOutputStream(file), StandardCharsets.UTF_8));
+			try {
+				writeFlameGraph(out);
+			} finally {
+				out.close();
+			}
+			status = "Saved " + file.getAbsolutePath();
+		} catch (IOException e) {
+			status = "Save failed: " + e.getMessage();
+		}
+		if (isOverlayVisible()) {
+			overlay.refresh();
+		}
+	}
+
+	private static Cause causeOf(Graphics g) {
+		if (g instanceof Graphics2D) {
+			GraphicsConfiguration gc = ((Graphics2D) g).getDeviceConfiguration();
+			if (gc != null
+					&& gc.getDevice().getType() != GraphicsDevice.TYPE_RASTER_SCREEN) {
+				return Cause.OFFSCREEN;
+			}
+		}
+		AWTEvent event = EventQueue.getCurrentEvent();
+		if (event instanceof InvocationEvent) {
+			return Cause.REPAINT;
+		}
+		if (event instanceof InputEvent) {
+			return Cause.INPUT;
+		}
+		return Cause.OTHER;
+	}
+
+	private static int slot(Cause cause, Phase phase) {
+		return cause.ordinal() * Phase.values().length + phase.ordinal();
+	}
+
+	private static void add(long[] into, long[] from) {
+		for (int i = 0; i < into.length; i++) {
+			into[i] += from[i];
+		}
+	}
+
+	private static String nameOf(JInternalFrame frame) {
+		String title = frame.getTitle();
+		// Anonymous subclasses go by the class they extend
+		Class<?> type = frame.getClass();
+		while (type.getSimpleName().isEmpty()) {
+			type = type.getSuperclass();
+		}
+		String name = type.getSimpleName();
+		if (title != null && !title.isEmpty()) {
+			name += " " + title;
+		}
+		// Semicolons separate stack frames in the folded format
+		return name.replace(';', ',');
+	}
+
+	private static final Comparator<Offender> WORST_FIRST = new Comparator<Offender>() {
+		@Override
+		public int compare(Offender a, Offender b) {
+			return Long.compare(b.getRecentNanos(), a.getRecentNanos());
+		}
+	};
+
+	/**
+	 * How long one frame spent painting over the last second
+	 */
+	public static final class Offender {
+
+		private final JInternalFrame frame;
+		private final String name;
+		private final int samples;
+		private final long recentNanos;
+		private final long maxNanos;
+		private final Cause worstCause;
+
+		Offender(JInternalFrame frame, String name, int samples,
+				long recentNanos, long maxNanos, Cause worstCause) {
+			this.frame = frame;
+			this.name = name;
+			this.samples = samples;
+			this.recentNanos = recentNanos;
+			this.maxNanos = maxNanos;
+			this.worstCause = worstCause;
+		}
+
+		/**
+		 * @return frame, or null for the desktop background
+		 */
+		public JInternalFrame getFrame() {
+			return frame;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return samples taken; a frame gives one for itself and one for
+		 *         its children each time it paints
+		 */
+		public int getSamples() {
+			return samples;
+		}
+
+		public long getRecentNanos() {
+			return recentNanos;
+		}
+
+		public long getMaxNanos() {
+			return maxNanos;
+		}
+
+		/**
+		 * @return the cause that took the most time
+		 */
+		public Cause getWorstCause() {
+			return worstCause;
+		}
+	}
+
+	/**
+	 * The samples and totals of one frame, or of the background
+	 */
+	private static final class Source {
+
+		final JInternalFrame frame;
+		String name;
+
+		final long[] times = new long[RING_SIZE];
+		final long[] durations = new long[RING_SIZE];
+		final byte[] causes = new byte[RING_SIZE];
+		int next;
+		int size;
+
+		final long[] totals = new long[Cause.values().length
+				* Phase.values().length];
+
+		Source(JInternalFrame frame, String name) {
+			this.frame = frame;
+			this.name = name;
+		}
+
+		void record(long time, long duration, Cause cause, Phase phase) {
+			times[next] = time;
+			durations[next] = duration;
+			causes[next] = (byte) cause.ordinal();
+			next = (next + 1) % RING_SIZE;
+			if (size < RING_SIZE) {
+				size++;
+			}
+			totals[slot(cause, phase)] += duration;
+		}
+
+		Offender recent(long since) {
+			long sum = 0;
+			long max = 0;
+			int paints = 0;
+			long[] byCause = new long[Cause.values().length];
+			for (int k = 1; k <= size; k++) {
+				int i = (next - k + RING_SIZE) % RING_SIZE;
+				if (times[i] < since) {
+					break;
+				}
+				sum += durations[i];
+				max = Math.max(max, durations[i]);
+				byCause[causes[i]] += durations[i];
+				paints++;
+			}
+			if (paints == 0) {
+				return null;
+			}
+			int worst = 0;
+			for (int c = 1; c < byCause.length; c++) {
+				if (byCause[c] > byCause[worst]) {
+					worst = c;
+				}
+			}
+			return new Offender(frame, name, paints, sum, max,
+					Cause.values()[worst]);
+		}
+
+		void clear() {
+			next = 0;
+			size = 0;
+			Arrays.fill(totals, 0);
+		}
+	}
+
+	/**
+	 * Live list of the worst frames, drawn over the top right of the desktop.
+	 * Opaque, so refreshing it does not make the frames under it paint.
+	 */
+	private class Overlay extends JComponent {
+
+		private static final long serialVersionUID = 1L;
+
+		private static final int WIDTH = 360;
+		private static final int PAD = 6;
+
+		private List<Offender> rows = Collections.emptyList();
+
+		Overlay() {
+			setOpaque(true);
+			setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+		}
+
+		void refresh() {
+			rows = getTopOffenders(OVERLAY_ROWS);
+			JComponent parent = (JComponent) getParent();
+			if (parent == null) {
+				return;
+			}
+			FontMetrics fm = getFontMetrics(getFont());
+			int lines = rows.size() + (status == null ? 2 : 3);
+			Rectangle visible = SwingUtilities.convertRectangle(desktop,
+					desktop.getVisibleRect(), parent);
+			int height = lines * fm.getHeight() + 2 * PAD;
+			setBounds(visible.x + Math.max(0, visible.width - WIDTH - PAD),
+					visible.y + PAD, Math.min(WIDTH, visible.width), height);
+			repaint();
+		}
+
+		@Override
+		protected void paintComponent(Graphics g) {
+			g.setColor(new Color(32, 32, 32));
+			g.fillRect(0, 0, getWidth(), getHeight());
+			g.setColor(Color.WHITE);
+			g.setFont(getFont());
+			FontMetrics fm = g.getFontMetrics();
+			int y = PAD + fm.getAscent();
+			g.drawString("Paint time, last second     ms  max  n", PAD, y);
+			for (Offender o : rows) {
+				y += fm.getHeight();
+				String name = o.getName();
+				if (name.length() > 24) {
+					name = name.substring(0, 21) + "...";
+				}
+				g.drawString(String.format("%-24s %6.1f %4.0f %3d", name,
+						o.getRecentNanos() / 1e6, o.getMaxNanos() / 1e6,
+						o.getSamples()), PAD, y);
+			}
+			y += fm.getHeight();
+			g.setColor(Color.LIGHT_GRAY);
+			g.drawString("Ctrl+Shift+F saves a flame graph", PAD, y);
+			if (status != null) {
+				y += fm.getHeight();
+				g.drawString(status, PAD, y);
+			}
+		}
+	}
+
+	/**
+	 * Keeps a ring of samples for each frame on the desktop
+	 */
+	private class Tracker extends MDIDesktopFrameTracker {
+
+		Tracker(MDIDesktopPane desktop) {
+			super(desktop);
+		}
+
+		@Override
+		protected void frameTracked(JInternalFrame frame) {
+			if (frame instanceof MDIDesktopFrame) {
+				sources.put(frame, new Source(frame, nameOf(frame)));
+			}
+		}
+
+		@Override
+		protected void frameUntracked(JInternalFrame frame) {
+			Source source = sources.remove(frame);
+			if (source == null) {
+				return;
+			}
+			long[] into = retired.get(source.name);
+			if (into == null) {
+				retired.put(source.name, source.totals.clone());
+			} else {
+				add(into, source.totals);
+			}
+		}
+
+		@Override
+		protected void frameBoundsChanged(JInternalFrame frame) {
+		}
+	}
+}
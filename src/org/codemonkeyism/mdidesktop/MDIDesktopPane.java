@@ -1,17 +1,32 @@
 package org.codemonkeyism.mdidesktop;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.beans.PropertyVetoException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import javax.swing.JComponent;
 import javax.swing.JDesktopPane;
 import javax.swing.JInternalFrame;
 import javax.swing.Painter;
+import javax.swing.SwingUtilities;
 import javax.swing.UIDefaults;
 import javax.swing.UIManager;
 
+import org.codemonkeyism.mdidesktop.MDIDesktopMetrics.Operation;
+
 /**
  * An extension of JDesktopPane that supports often used MDI functionality. This
  * class also handles setting scroll bars for when windows move too far to the
@@ -24,14 +39,142 @@ public class MDIDesktopPane extends JDesktopPane {
 	private static final long serialVersionUID = 1L;
 
 	public static final int FRAME_OFFSET = 20;
+
+	/**
+	 * Drag mode that moves a translucent picture of the frame and puts the
+	 * frame down where it is dropped
+	 */
+	public static final int GHOST_DRAG_MODE = 2;
+
+	/**
+	 * Drag mode that picks live, ghost or outline dragging for each frame
+	 * from how long it takes to paint
+	 */
+	public static final int ADAPTIVE_DRAG_MODE = 3;
+
+	private static final String DRAG_MODE_PROPERTY = "JDesktopPane.dragMode";
+
+	public static final int DEFAULT_LIVE_DRAG_LIMIT = 8;
+	public static final int DEFAULT_GHOST_DRAG_LIMIT = 50;
+
+	private static final MDIDesktopMetrics METRICS = MDIDesktopMetrics.getInstance();
 	
 	private MDIDesktopManager manager;
 
+	// The view that owns this desktop, if any
+	private MDIDesktopAbstractView view;
+
+	private int layoutDepth;
+	private boolean sizeCheckDeferred;
+	private boolean revalidateDeferred;
+	private Rectangle deferredRepaint;
+
+	private boolean layoutAnimated;
+	private MDIDesktopLayoutAnimator layoutAnimator;
+
+	private MDIDesktopVirtualizer virtualizer;
+	private int virtualizationMargin = MDIDesktopVirtualizer.DEFAULT_MARGIN;
+
+	private MDIDesktopSpatialIndex spatialIndex;
+
+	private MDIDesktopFrameIndex frameIndex;
+	private MDIDesktopFrameRegistry frameRegistry;
+	private MDIDesktopWindowSwitcher windowSwitcher;
+
+	private MDIDesktopFrameRevealer frameRevealer;
+
+	private MDIDesktopPaintProfiler paintProfiler;
+
+	private MDIDesktopBackground desktopBackground;
+
+	private int liveDragLimit = DEFAULT_LIVE_DRAG_LIMIT;
+	private int ghostDragLimit = DEFAULT_GHOST_DRAG_LIMIT;
+
 	public MDIDesktopPane() {
 		manager = new MDIDesktopManager(this);
 		setDesktopManager(manager);
 	}
 
+	/**
+	 * Start a layout transaction. Until the matching
+	 * <code>commitLayout()</code> desktop size checks, revalidation and repaints
+	 * of the desktop are held back, then done once on commit. Transactions may
+	 * be nested; only the outermost commit does any work.
+	 */
+	public void beginLayout() {
+		layoutDepth++;
+	}
+
+	/**
+	 * Finish a layout transaction. The outermost commit does a single desktop
+	 * size check, a single revalidate and a single repaint of the union of the
+	 * regions that were dirtied during the transaction.
+	 */
+	public void commitLayout() {
+		checkState(layoutDepth > 0, "commitLayout() without beginLayout()");
+		if (--layoutDepth > 0) {
+			return;
+		}
+		if (revalidateDeferred) {
+			revalidateDeferred = false;
+			super.revalidate();
+		}
+		if (sizeCheckDeferred) {
+			sizeCheckDeferred = false;
+			checkDesktopSize();
+		}
+		if (deferredRepaint != null) {
+			Rectangle r = deferredRepaint;
+			deferredRepaint = null;
+			super.repaint(0, r.x, r.y, r.width, r.height);
+		}
+	}
+
+	/**
+	 * Run the given work inside a layout transaction
+	 * 
+	 * @param work
+	 */
+	public void batch(Runnable work) {
+		beginLayout();
+		try {
+			work.run();
+		} finally {
+			commitLayout();
+		}
+	}
+
+	/**
+	 * Are we inside a layout transaction?
+	 * 
+	 * @return layingOut
+	 */
+	public boolean isInLayoutTransaction() {
+		return layoutDepth > 0;
+	}
+
+	@Override
+	public void repaint(long tm, int x, int y, int width, int height) {
+		if (layoutDepth > 0) {
+			if (deferredRepaint == null) {
+				deferredRepaint = new Rectangle(x, y, width, height);
+			} else {
+				deferredRepaint.add(new Rectangle(x, y, width, height));
+			}
+			return;
+		}
+		super.repaint(tm, x, y, width, height);
+	}
+
+	@Override
+	public void revalidate() {
+		if (layoutDepth > 0) {
+			revalidateDeferred = true;
+			return;
+		}
+		super.revalidate();
+	}
+
 	/**
 	 * Set the bounds
 	 */
@@ -43,7 +186,22 @@ public class MDIDesktopPane extends JDesktopPane {
 	@Override
 	protected void addImpl(Component comp, Object constraints, int index) {
 		super.addImpl(comp, constraints, index);
-		checkDesktopSize();
+		if (!(comp instanceof MDIDesktopDragOverlay.Part)) {
+			checkDesktopSize();
+		}
+	}
+
+	void setView(MDIDesktopAbstractView view) {
+		this.view = view;
+	}
+
+	/**
+	 * The view that owns this desktop
+	 * 
+	 * @return view, or null for a desktop used on its own
+	 */
+	MDIDesktopAbstractView getView() {
+		return view;
 	}
 
 	/**
@@ -73,90 +231,621 @@ public class MDIDesktopPane extends JDesktopPane {
 	 */
 	public void remove(Component c) {
 		super.remove(c);
-		checkDesktopSize();
+		if (!(c instanceof MDIDesktopDragOverlay.Part)) {
+			checkDesktopSize();
+		}
 	}
 
 	/**
 	 * Cascade all internal frames
 	 */
 	public void cascadeFrames() {
-		int x = 0;
-		int y = 0;
-		JInternalFrame[] allFrames = getAllFrames();
+		long start = METRICS.begin(Operation.CASCADE);
+		try {
+			manager.setNormalSize();
+			JInternalFrame[] frames = cascadeOrder();
+			int[] bounds = MDIDesktopLayoutEngine.cascade(
+					captureConstraints(frames), FRAME_OFFSET);
+			applyFrameBounds(frames, bounds, frames.length);
+		} finally {
+			METRICS.end(Operation.CASCADE, start);
+		}
+	}
 
+	/**
+	 * Cascade all internal frames, working out the geometry on the common
+	 * fork-join pool. Call on the event dispatch thread; the frames are moved
+	 * on it once the geometry is ready.
+	 * 
+	 * @return completes once the frames have been moved
+	 */
+	public CompletableFuture<Void> cascadeFramesAsync() {
 		manager.setNormalSize();
-		// FRAME_OFFSET;
-		for (int i = allFrames.length - 1; i >= 0; i--) {
-			allFrames[i].setLocation(x, y);
-			x = x + FRAME_OFFSET;
-			y = y + FRAME_OFFSET;
-		}
+		final JInternalFrame[] frames = cascadeOrder();
+		final MDIDesktopLayoutEngine.FrameConstraints[] constraints = captureConstraints(frames);
+		return layoutAsync(frames, new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				return MDIDesktopLayoutEngine.cascade(constraints, FRAME_OFFSET);
+			}
+		});
 	}
 
 	/**
-	 * Tile all internal frames
+	 * Tile all internal frames. Frames that are not resizable keep their size
+	 * and the others share the space around them.
 	 */
 	public void tileFrames() {
-		// How many frames do we have?
-		JInternalFrame[] allframes = getAllFrames();
-		int count = allframes.length;
-		if (count == 0)
-			return;
+		long start = METRICS.begin(Operation.TILE);
+		try {
+			JInternalFrame[] frames = tileOrder();
+			if (frames.length == 0)
+				return;
+			Dimension size = getSize();
+			int[] bounds = MDIDesktopLayoutEngine.tile(
+					captureConstraints(frames), size.width, size.height);
+			applyFrameBounds(frames, bounds, frames.length);
+		} finally {
+			METRICS.end(Operation.TILE, start);
+		}
+	}
 
-		// Determine the necessary grid size
-		int sqrt = (int) Math.sqrt(count);
-		int rows = sqrt;
-		int cols = sqrt;
-		if (rows * cols < count) {
-			cols++;
-			if (rows * cols < count) {
-				rows++;
+	/**
+	 * Tile all internal frames, working out the geometry on the common
+	 * fork-join pool. Call on the event dispatch thread; the frames are moved
+	 * on it once the geometry is ready.
+	 * 
+	 * @return completes once the frames have been moved
+	 */
+	public CompletableFuture<Void> tileFramesAsync() {
+		final JInternalFrame[] frames = tileOrder();
+		final MDIDesktopLayoutEngine.FrameConstraints[] constraints = captureConstraints(frames);
+		final Dimension size = getSize();
+		return layoutAsync(frames, new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				return MDIDesktopLayoutEngine.tile(constraints, size.width,
+						size.height);
 			}
+		});
+	}
+
+	/**
+	 * Arrange all internal frames with the given layout
+	 * 
+	 * @param layout
+	 */
+	public void layoutFrames(DesktopLayout layout) {
+		checkNotNull(layout);
+		long start = METRICS.begin(Operation.LAYOUT);
+		try {
+			JInternalFrame[] frames = layoutOrder();
+			if (frames.length == 0)
+				return;
+			Dimension size = getSize();
+			int[] bounds = layout.layout(captureConstraints(frames),
+					size.width, size.height);
+			checkLayoutResult(bounds, frames.length);
+			applyFrameBounds(frames, bounds, frames.length);
+		} finally {
+			METRICS.end(Operation.LAYOUT, start);
 		}
+	}
 
-		// Define some initial values for size & location.
-		Dimension size = getSize();
+	/**
+	 * Arrange all internal frames with the given layout, running it on the
+	 * common fork-join pool. Call on the event dispatch thread; the frames are
+	 * moved on it once the layout is done.
+	 * 
+	 * @param layout
+	 * @return completes once the frames have been moved
+	 */
+	public CompletableFuture<Void> layoutFramesAsync(final DesktopLayout layout) {
+		checkNotNull(layout);
+		final JInternalFrame[] frames = layoutOrder();
+		final MDIDesktopLayoutEngine.FrameConstraints[] constraints = captureConstraints(frames);
+		final Dimension size = getSize();
+		return layoutAsync(frames, new Supplier<int[]>() {
+			@Override
+			public int[] get() {
+				int[] bounds = layout.layout(constraints, size.width,
+						size.height);
+				checkLayoutResult(bounds, constraints.length);
+				return bounds;
+			}
+		});
+	}
 
-		int w = size.width / cols;
-		int h = size.height / rows;
-		int x = 0;
-		int y = 0;
+	private static void checkLayoutResult(int[] bounds, int count) {
+		checkState(bounds != null && bounds.length >= count * 4,
+				"Layout returned bounds for fewer than %s frames", count);
+	}
+
+	/**
+	 * The frames to cascade, back to front
+	 */
+	private JInternalFrame[] cascadeOrder() {
+		return framesInZOrder(true);
+	}
 
-		// Iterate over the frames, deiconifying any iconified frames and then
-		// relocating & resizing each.
-		for (int i = 0; i < rows; i++) {
-			for (int j = 0; j < cols && ((i * cols) + j < count); j++) {
-				JInternalFrame f = allframes[(i * cols) + j];
+	/**
+	 * The frames to tile, de-iconified first so they are measured at their
+	 * normal size
+	 */
+	private JInternalFrame[] tileOrder() {
+		return deiconify(framesInZOrder(false));
+	}
 
+	/**
+	 * The frames in the order they are stacked, in an array sized from the
+	 * registry rather than built up the way <code>getAllFrames()</code> does
+	 * 
+	 * @param backToFront
+	 * @return frames
+	 */
+	private JInternalFrame[] framesInZOrder(boolean backToFront) {
+		MDIDesktopFrameRegistry registry = getFrameRegistry();
+		JInternalFrame[] frames = new JInternalFrame[registry.size()];
+		int count = getComponentCount();
+		int n = 0;
+		for (int i = 0; i < count && n < frames.length; i++) {
+			Component c = getComponent(backToFront ? count - 1 - i : i);
+			if (MDIDesktopFrameTracker.isTrackable(c)) {
+				JInternalFrame frame = MDIDesktopFrameTracker.frameOf(c);
+				if (registry.contains(frame)) {
+					frames[n++] = frame;
+				}
+			}
+		}
+		return n == frames.length ? frames : Arrays.copyOf(frames, n);
+	}
+
+	/**
+	 * The frames for a <code>DesktopLayout</code>, most recently activated
+	 * first and de-iconified
+	 */
+	private JInternalFrame[] layoutOrder() {
+		List<JInternalFrame> recent = getFrameIndex().getRecentFrames();
+		return deiconify(recent.toArray(new JInternalFrame[recent.size()]));
+	}
+
+	private JInternalFrame[] deiconify(JInternalFrame[] frames) {
+		beginLayout();
+		try {
+			for (JInternalFrame f : frames) {
 				if (!f.isClosed() && f.isIcon()) {
 					try {
 						f.setIcon(false);
 					} catch (PropertyVetoException ignored) {
 					}
 				}
+			}
+		} finally {
+			commitLayout();
+		}
+		return frames;
+	}
 
-				if (f.isResizable()) {
-					getDesktopManager().resizeFrame(f, x, y, w, h);
-				}
-				x += w;
+	private static MDIDesktopLayoutEngine.FrameConstraints[] captureConstraints(
+			JInternalFrame[] frames) {
+		MDIDesktopLayoutEngine.FrameConstraints[] constraints = new MDIDesktopLayoutEngine.FrameConstraints[frames.length];
+		for (int i = 0; i < frames.length; i++) {
+			JInternalFrame f = frames[i];
+			Dimension min = f.getMinimumSize();
+			Dimension max = f.getMaximumSize();
+			constraints[i] = new MDIDesktopLayoutEngine.FrameConstraints(
+					min.width, min.height, max.width, max.height, f.getWidth(),
+					f.getHeight(), f.isResizable());
+		}
+		return constraints;
+	}
+
+	/**
+	 * Work out bounds off the event dispatch thread, then apply them on it to
+	 * the frames that are still on this desktop
+	 */
+	private CompletableFuture<Void> layoutAsync(final JInternalFrame[] frames,
+			Supplier<int[]> geometry) {
+		final CompletableFuture<Void> applied = new CompletableFuture<Void>();
+		if (frames.length == 0) {
+			applied.complete(null);
+			return applied;
+		}
+		CompletableFuture.supplyAsync(geometry).whenComplete(
+				new BiConsumer<int[], Throwable>() {
+					@Override
+					public void accept(final int[] bounds, final Throwable failure) {
+						SwingUtilities.invokeLater(new Runnable() {
+							@Override
+							public void run() {
+								if (failure != null) {
+									applied.completeExceptionally(failure);
+									return;
+								}
+								try {
+									applyToCurrentFrames(frames, bounds);
+									applied.complete(null);
+								} catch (RuntimeException e) {
+									applied.completeExceptionally(e);
+								}
+							}
+						});
+					}
+				});
+		return applied;
+	}
+
+	private void applyToCurrentFrames(JInternalFrame[] frames, int[] bounds) {
+		int count = 0;
+		for (int i = 0; i < frames.length; i++) {
+			// Closed or moved elsewhere while the geometry was worked out
+			if (frames[i].isClosed() || frames[i].getDesktopPane() != this) {
+				continue;
 			}
-			y += h; // start the next row
-			x = 0;
+			frames[count] = frames[i];
+			System.arraycopy(bounds, i * 4, bounds, count * 4, 4);
+			count++;
 		}
+		applyFrameBounds(frames, bounds, count);
+	}
 
+	/**
+	 * Move frames to new bounds, animating the move if layout animation is
+	 * switched on
+	 * 
+	 * @param frames
+	 * @param bounds
+	 *            x, y, width and height of each frame in turn
+	 * @param count
+	 */
+	protected void applyFrameBounds(JInternalFrame[] frames, int[] bounds,
+			int count) {
+		if (layoutAnimated) {
+			getLayoutAnimator().animate(frames, bounds, count);
+			return;
+		}
+		beginLayout();
+		try {
+			for (int i = 0; i < count; i++) {
+				int b = i * 4;
+				manager.setBoundsForFrame(frames[i], bounds[b], bounds[b + 1],
+						bounds[b + 2], bounds[b + 3]);
+			}
+		} finally {
+			commitLayout();
+		}
+	}
+
+	/**
+	 * Animate tile and cascade rather than jumping frames into place
+	 * 
+	 * @param animated
+	 */
+	public void setLayoutAnimated(boolean animated) {
+		layoutAnimated = animated;
+		if (!animated && layoutAnimator != null) {
+			layoutAnimator.finish();
+		}
+	}
+
+	public boolean isLayoutAnimated() {
+		return layoutAnimated;
+	}
+
+	/**
+	 * Get the animator used for tile and cascade. Use it to tune the duration
+	 * and frame limit, or to read tick timings.
+	 * 
+	 * @return layoutAnimator
+	 */
+	public MDIDesktopLayoutAnimator getLayoutAnimator() {
+		if (layoutAnimator == null) {
+			layoutAnimator = new MDIDesktopLayoutAnimator(this);
+		}
+		return layoutAnimator;
+	}
+
+	/**
+	 * Set the drag mode. As well as <code>LIVE_DRAG_MODE</code> and
+	 * <code>OUTLINE_DRAG_MODE</code> this takes <code>GHOST_DRAG_MODE</code>
+	 * and <code>ADAPTIVE_DRAG_MODE</code>.
+	 * 
+	 * @param dragMode
+	 */
+	@Override
+	public void setDragMode(int dragMode) {
+		super.setDragMode(dragMode);
+		// Swing does not know our modes, so tell it that frames dragged live
+		// under them should still be blitted rather than repainted
+		boolean ours = dragMode == GHOST_DRAG_MODE
+				|| dragMode == ADAPTIVE_DRAG_MODE;
+		putClientProperty(DRAG_MODE_PROPERTY, ours ? "faster" : null);
+	}
+
+	/**
+	 * Set how <code>ADAPTIVE_DRAG_MODE</code> picks a drag style. Frames that
+	 * paint within the live limit are dragged live, frames within the ghost
+	 * limit as a ghost and slower frames as an outline. Only
+	 * <code>MDIDesktopFrame</code>s time their paints; other frames are
+	 * always dragged live.
+	 * 
+	 * @param liveMillis
+	 * @param ghostMillis
+	 */
+	public void setAdaptiveDragLimits(int liveMillis, int ghostMillis) {
+		checkArgument(liveMillis >= 0 && ghostMillis >= liveMillis,
+				"Need 0 <= liveMillis <= ghostMillis");
+		liveDragLimit = liveMillis;
+		ghostDragLimit = ghostMillis;
+	}
+
+	public int getLiveDragLimit() {
+		return liveDragLimit;
+	}
+
+	public int getGhostDragLimit() {
+		return ghostDragLimit;
+	}
+
+	/**
+	 * Get the modal frames open on this desktop
+	 * 
+	 * @return modalStack
+	 */
+	public MDIDesktopModalStack getModalStack() {
+		return MDIDesktopModalStack.forDesktop(this);
+	}
+
+	/**
+	 * Get the spatial index of the frames on this desktop, for hit-testing,
+	 * overlap and nearest frame queries. The index is built the first time it
+	 * is asked for and kept up to date from then on.
+	 * 
+	 * @return spatialIndex
+	 */
+	public MDIDesktopSpatialIndex getSpatialIndex() {
+		if (spatialIndex == null) {
+			spatialIndex = new MDIDesktopSpatialIndex(this);
+		}
+		return spatialIndex;
+	}
+
+	/**
+	 * Get the frames on this desktop in most recently activated order, with a
+	 * title index for filtering them. Built the first time it is asked for.
+	 * 
+	 * @return frameIndex
+	 */
+	public MDIDesktopFrameIndex getFrameIndex() {
+		if (frameIndex == null) {
+			frameIndex = new MDIDesktopFrameIndex(this);
+		}
+		return frameIndex;
+	}
+
+	/**
+	 * Get the frames on this desktop in the order they were added, with
+	 * lookups by id, class and title. Built the first time it is asked for.
+	 * 
+	 * @return frameRegistry
+	 */
+	public MDIDesktopFrameRegistry getFrameRegistry() {
+		if (frameRegistry == null) {
+			frameRegistry = new MDIDesktopFrameRegistry(this);
+		}
+		return frameRegistry;
+	}
+
+	/**
+	 * Switch the Ctrl+Tab window switcher on or off. It is off by default, as
+	 * while on it takes Ctrl+Tab and Ctrl+E for the whole window, ahead of
+	 * focus traversal and of any key bindings the application has for them.
+	 * 
+	 * @param enabled
+	 */
+	public void setWindowSwitcherEnabled(boolean enabled) {
+		if (enabled && windowSwitcher == null) {
+			windowSwitcher = new MDIDesktopWindowSwitcher(this, getFrameIndex());
+			windowSwitcher.install();
+		} else if (!enabled && windowSwitcher != null) {
+			windowSwitcher.uninstall();
+			windowSwitcher = null;
+		}
+	}
+
+	public boolean isWindowSwitcherEnabled() {
+		return windowSwitcher != null;
+	}
+
+	/**
+	 * Get the window switcher
+	 * 
+	 * @return windowSwitcher, or null if it is switched off
+	 */
+	public MDIDesktopWindowSwitcher getWindowSwitcher() {
+		return windowSwitcher;
+	}
+
+	/**
+	 * Get the revealer that scrolls selected frames into view. Created the
+	 * first time it is asked for.
+	 * 
+	 * @return frameRevealer
+	 */
+	public MDIDesktopFrameRevealer getFrameRevealer() {
+		if (frameRevealer == null) {
+			frameRevealer = new MDIDesktopFrameRevealer(this);
+		}
+		return frameRevealer;
+	}
+
+	/**
+	 * Bring a frame into use: de-iconify it, bring it to the front, select it
+	 * and scroll it into view
+	 * 
+	 * @param frame
+	 */
+	public void showFrame(JInternalFrame frame) {
+		if (frame.isIcon()) {
+			try {
+				frame.setIcon(false);
+			} catch (PropertyVetoException e) {
+				// Leave it iconified
+			}
+		}
+		frame.moveToFront();
+		try {
+			frame.setSelected(true);
+		} catch (PropertyVetoException e) {
+			// A modal child took the selection instead
+		}
+		getFrameRevealer().reveal(frame);
+	}
+
+	/**
+	 * Time the painting of the frames on this desktop, their glass panes and
+	 * the desktop background. Off by default.
+	 * 
+	 * @param enabled
+	 */
+	public void setPaintProfilingEnabled(boolean enabled) {
+		if (enabled && paintProfiler == null) {
+			paintProfiler = new MDIDesktopPaintProfiler(this);
+			paintProfiler.install();
+		} else if (!enabled && paintProfiler != null) {
+			paintProfiler.uninstall();
+			paintProfiler = null;
+		}
+	}
+
+	public boolean isPaintProfilingEnabled() {
+		return paintProfiler != null;
+	}
+
+	/**
+	 * Get the paint profiler
+	 * 
+	 * @return paintProfiler, or null if profiling is off
+	 */
+	public MDIDesktopPaintProfiler getPaintProfiler() {
+		return paintProfiler;
+	}
+
+	/**
+	 * Paint the background, timing it while profiling
+	 */
+	@Override
+	protected void paintComponent(Graphics g) {
+		MDIDesktopPaintProfiler profiler = paintProfiler;
+		if (profiler == null) {
+			paintBackground(g);
+			return;
+		}
+		long start = profiler.begin();
+		try {
+			paintBackground(g);
+		} finally {
+			profiler.end(null, MDIDesktopPaintProfiler.Phase.BACKGROUND, g,
+					start);
+		}
+	}
+
+	/**
+	 * Paint a wallpaper or gradient straight from the desktop background.
+	 * Without one the look and feel paints the desktop as usual, which under
+	 * Nimbus goes through the desktop background as well.
+	 */
+	private void paintBackground(Graphics g) {
+		if (desktopBackground == null || !desktopBackground.hasWallpaper()) {
+			super.paintComponent(g);
+		} else if (isOpaque()) {
+			desktopBackground.paint(g, getWidth(), getHeight());
+		}
+	}
+
+	/**
+	 * Get the desktop background, to set a wallpaper
+	 * 
+	 * @return desktopBackground
+	 */
+	public MDIDesktopBackground getDesktopBackground() {
+		if (desktopBackground == null) {
+			desktopBackground = new MDIDesktopBackground(this);
+		}
+		return desktopBackground;
+	}
+
+	@Override
+	public void setBackground(Color bg) {
+		super.setBackground(bg);
+		// Called from the JDesktopPane constructor before we have a background
+		if (desktopBackground != null) {
+			desktopBackground.colorsChanged();
+		}
+	}
+
+	/**
+	 * Release the content of frames that are scrolled out of view. Only
+	 * <code>MDIDesktopFrame</code>s that have registered a content factory are
+	 * affected; their content is rebuilt when they come back into view.
+	 * 
+	 * @param enabled
+	 */
+	public void setVirtualizationEnabled(boolean enabled) {
+		if (enabled && virtualizer == null) {
+			virtualizer = new MDIDesktopVirtualizer(this);
+			virtualizer.setMargin(virtualizationMargin);
+			virtualizer.install();
+		} else if (!enabled && virtualizer != null) {
+			virtualizer.uninstall();
+			virtualizer = null;
+		}
+	}
+
+	public boolean isVirtualizationEnabled() {
+		return virtualizer != null;
+	}
+
+	public int getVirtualizationMargin() {
+		return virtualizationMargin;
+	}
+
+	/**
+	 * Set how far outside the visible area, in pixels, frames keep their
+	 * content
+	 * 
+	 * @param margin
+	 */
+	public void setVirtualizationMargin(int margin) {
+		checkArgument(margin >= 0, "Margin cannot be negative");
+		virtualizationMargin = margin;
+		if (virtualizer != null) {
+			virtualizer.setMargin(margin);
+		}
 	}
 
 	/**
 	 * Iconfiy all internal frames
 	 */
 	public void minimizeAllFrames() {
-		JInternalFrame[] allFrames = getAllFrames();
-		for (int i = 0; i < allFrames.length; i++) {
+		long start = METRICS.begin(Operation.MINIMISE_ALL);
+		try {
+			beginLayout();
 			try {
-				allFrames[i].setIcon(true);
-			} catch (PropertyVetoException e) {
-				allFrames[i].toBack();
+				// Iconifying swaps a frame for its icon, which leaves the
+				// registry as it is
+				for (JInternalFrame frame : getFrameRegistry()) {
+					try {
+						frame.setIcon(true);
+					} catch (PropertyVetoException e) {
+						frame.toBack();
+					}
+				}
+			} finally {
+				commitLayout();
 			}
+		} finally {
+			METRICS.end(Operation.MINIMISE_ALL, start);
 		}
 	}
 
@@ -183,6 +872,10 @@ public class MDIDesktopPane extends JDesktopPane {
 	 * calculate the correct size
 	 */
 	protected void checkDesktopSize() {
+		if (layoutDepth > 0) {
+			sizeCheckDeferred = true;
+			return;
+		}
 		if (getParent() != null && isVisible()) {
 			manager.resizeDesktop();
 		}
@@ -196,15 +889,21 @@ public class MDIDesktopPane extends JDesktopPane {
 
                 @Override
                 public void paint(Graphics2D g, JComponent c, int w, int h) {
-                    // file using normal desktop color
-                    g.setColor(UIManager.getDefaults().getColor("desktop"));
-                    g.fillRect(0, 0, w, h);
+                    // normal desktop color, or the wallpaper, in the clip only
+                    getDesktopBackground().paint(g, w, h);
                 }
 
             };
             map.put("DesktopPane[Enabled].backgroundPainter", painter);
             putClientProperty("Nimbus.Overrides", map);
         }
+        // Called from the JDesktopPane constructor before we have a manager
+        if (manager != null) {
+            manager.clearTitleWidthCache();
+        }
+        if (desktopBackground != null) {
+            desktopBackground.colorsChanged();
+        }
         super.updateUI();
     }
 
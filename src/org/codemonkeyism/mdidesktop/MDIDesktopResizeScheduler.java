@@ -0,0 +1,180 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Coalesces desktop resize requests. Any number of requests made between two
+ * passes of the event dispatch thread collapse into a single resize pass. An
+ * optional minimum interval stops passes running more often than, say, once a
+ * frame while frames are being added in bulk.
+ *
+ * @author Dean
+ */
+public class MDIDesktopResizeScheduler {
+
+	private final Runnable resizePass;
+
+	private final AtomicBoolean dirty = new AtomicBoolean();
+	private final AtomicLong requestCount = new AtomicLong();
+	private final AtomicLong passCount = new AtomicLong();
+
+	private volatile int minimumInterval;
+	private long lastPassNanos;
+	private Timer delayTimer;
+
+	private final Runnable dispatch = new Runnable() {
+		@Override
+		public void run() {
+			dispatchPass();
+		}
+	};
+
+	/**
+	 * Create a scheduler for the given resize pass
+	 *
+	 * @param resizePass
+	 */
+	public MDIDesktopResizeScheduler(Runnable resizePass) {
+		this.resizePass = checkNotNull(resizePass);
+	}
+
+	/**
+	 * Ask for a resize pass. Safe to call from any thread; the pass always runs
+	 * on the event dispatch thread.
+	 */
+	public void request() {
+		requestCount.incrementAndGet();
+		if (dirty.compareAndSet(false, true)) {
+			SwingUtilities.invokeLater(dispatch);
+		}
+	}
+
+	/**
+	 * Is there a resize pass waiting to run?
+	 *
+	 * @return pending
+	 */
+	public boolean isPending() {
+		return dirty.get();
+	}
+
+	/**
+	 * Run the waiting resize pass straight away instead of on its turn, for
+	 * callers that need the desktop's final size now. It counts as a pass like
+	 * any other and the queued one is dropped. Call on the event dispatch
+	 * thread.
+	 *
+	 * @return false if no pass was waiting
+	 */
+	public boolean runNow() {
+		if (!dirty.get()) {
+			return false;
+		}
+		if (delayTimer != null) {
+			delayTimer.stop();
+		}
+		runPass();
+		return true;
+	}
+
+	/**
+	 * Set the minimum time between two resize passes. Zero, the default, runs
+	 * a pass on the next event dispatch cycle.
+	 *
+	 * @param milliseconds
+	 */
+	public void setMinimumInterval(int milliseconds) {
+		checkArgument(milliseconds >= 0, "Minimum interval cannot be negative");
+		minimumInterval = milliseconds;
+	}
+
+	public int getMinimumInterval() {
+		return minimumInterval;
+	}
+
+	/**
+	 * How many resizes have been asked for
+	 *
+	 * @return requestCount
+	 */
+	public long getRequestCount() {
+		return requestCount.get();
+	}
+
+	/**
+	 * How many resize passes have actually run
+	 *
+	 * @return passCount
+	 */
+	public long getPassCount() {
+		return passCount.get();
+	}
+
+	/**
+	 * How many requests were folded into a pass that was already pending
+	 *
+	 * @return mergedCount
+	 */
+	public long getMergedCount() {
+		return Math.max(0, requestCount.get() - passCount.get()
+				- (dirty.get() ? 1 : 0));
+	}
+
+	/**
+	 * Reset the request and pass counters
+	 */
+	public void resetCounters() {
+		requestCount.set(0);
+		passCount.set(0);
+	}
+
+	private void dispatchPass() {
+		if (!dirty.get()) {
+			// Already run by runNow()
+			return;
+		}
+		int interval = minimumInterval;
+		if (interval > 0 && lastPassNanos != 0) {
+			long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+					- lastPassNanos);
+			if (elapsed < interval) {
+				delay((int) (interval - elapsed));
+				return;
+			}
+		}
+		runPass();
+	}
+
+	private void delay(int milliseconds) {
+		if (delayTimer == null) {
+			delayTimer = new Timer(milliseconds, new ActionListener() {
+				@Override
+				public void actionPerformed(ActionEvent e) {
+					runPass();
+				}
+			});
+			delayTimer.setRepeats(false);
+		}
+		delayTimer.setInitialDelay(milliseconds);
+		delayTimer.restart();
+	}
+
+	private void runPass() {
+		// Clear first so that anything asking for a resize while the pass is
+		// running gets a pass of its own
+		dirty.set(false);
+		lastPassNanos = System.nanoTime();
+		passCount.incrementAndGet();
+		resizePass.run();
+	}
+}
@@ -0,0 +1,419 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.awt.Component;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.JInternalFrame;
+
+/**
+ * Uniform grid index over the frames on an <code>MDIDesktopPane</code>, kept
+ * up to date from frame bounds events. Point, rectangle and nearest frame
+ * queries only look at the grid cells they touch rather than every frame on
+ * the desktop.
+ *
+ * Iconified frames are indexed by the bounds of their desktop icon, since
+ * that is what is actually on the desktop. Because component events are
+ * delivered through the event queue, the index reflects frame bounds as of
+ * the last event processed; call <code>invalidate()</code> to force a rebuild
+ * from the live bounds.
+ *
+ * Get one from <code>MDIDesktopPane.getSpatialIndex()</code>.
+ *
+ * @author Dean
+ */
+public class MDIDesktopSpatialIndex {
+
+	public static final int DEFAULT_CELL_SIZE = 128;
+
+	private final MDIDesktopPane desktop;
+	private final int cellSize;
+
+	private final Tracker tracker;
+	private final Map<Long, List<JInternalFrame>> cells = new HashMap<Long, List<JInternalFrame>>();
+	private final Map<JInternalFrame, Rectangle> bounds = new IdentityHashMap<JInternalFrame, Rectangle>();
+
+	private boolean valid = true;
+
+	// Range of cells that have ever held a frame, bounds the nearest search
+	private int minCellX = Integer.MAX_VALUE;
+	private int minCellY = Integer.MAX_VALUE;
+	private int maxCellX = Integer.MIN_VALUE;
+	private int maxCellY = Integer.MIN_VALUE;
+
+	MDIDesktopSpatialIndex(MDIDesktopPane desktop) {
+		this(desktop, DEFAULT_CELL_SIZE);
+	}
+
+	MDIDesktopSpatialIndex(MDIDesktopPane desktop, int cellSize) {
+		checkArgument(cellSize > 0, "Cell size must be positive");
+		this.desktop = desktop;
+		this.cellSize = cellSize;
+		tracker = new Tracker(desktop);
+		tracker.install();
+	}
+
+	/**
+	 * Throw the index away and rebuild it from the current frame bounds on the
+	 * next query
+	 */
+	public void invalidate() {
+		valid = false;
+	}
+
+	/**
+	 * How many frames are indexed
+	 *
+	 * @return size
+	 */
+	public int size() {
+		validate();
+		return bounds.size();
+	}
+
+	/**
+	 * Get the bounds a frame was indexed under, or null if it is not indexed
+	 *
+	 * @param frame
+	 * @return bounds
+	 */
+	public Rectangle getIndexedBounds(JInternalFrame frame) {
+		validate();
+		Rectangle r = bounds.get(frame);
+		return r == null ? null : new Rectangle(r);
+	}
+
+	/**
+	 * Find the top-most frame under a point
+	 *
+	 * @param x
+	 * @param y
+	 * @return frame, or null if the point is over empty desktop
+	 */
+	public JInternalFrame frameAt(int x, int y) {
+		validate();
+		List<JInternalFrame> cell = cells.get(key(cellOf(x), cellOf(y)));
+		if (cell == null) {
+			return null;
+		}
+		JInternalFrame top = null;
+		int topOrder = Integer.MAX_VALUE;
+		for (JInternalFrame frame : cell) {
+			if (!bounds.get(frame).contains(x, y)) {
+				continue;
+			}
+			// Only rank by z-order when there is more than one candidate
+			if (top == null) {
+				top = frame;
+				continue;
+			}
+			if (topOrder == Integer.MAX_VALUE) {
+				topOrder = zOrder(top);
+			}
+			int order = zOrder(frame);
+			if (order < topOrder) {
+				top = frame;
+				topOrder = order;
+			}
+		}
+		return top;
+	}
+
+	/**
+	 * Find the top-most frame under a point
+	 *
+	 * @param point
+	 * @return frame, or null if the point is over empty desktop
+	 */
+	public JInternalFrame frameAt(Point point) {
+		return frameAt(point.x, point.y);
+	}
+
+	/**
+	 * Find every frame under a point, in no particular order
+	 *
+	 * @param point
+	 * @return frames
+	 */
+	public List<JInternalFrame> framesAt(Point point) {
+		validate();
+		List<JInternalFrame> cell = cells.get(key(cellOf(point.x),
+				cellOf(point.y)));
+		if (cell == null) {
+			return Collections.emptyList();
+		}
+		List<JInternalFrame> result = new ArrayList<JInternalFrame>();
+		for (JInternalFrame frame : cell) {
+			if (bounds.get(frame).contains(point)) {
+				result.add(frame);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Find every frame that intersects a rectangle, in no particular order
+	 *
+	 * @param area
+	 * @return frames
+	 */
+	public List<JInternalFrame> framesIntersecting(Rectangle area) {
+		validate();
+		List<JInternalFrame> result = new ArrayList<JInternalFrame>();
+		collectIntersecting(area, null, result);
+		return result;
+	}
+
+	/**
+	 * Find every other frame that overlaps the given one
+	 *
+	 * @param frame
+	 * @return frames
+	 */
+	public List<JInternalFrame> framesOverlapping(JInternalFrame frame) {
+		validate();
+		Rectangle r = bounds.get(frame);
+		if (r == null) {
+			return Collections.emptyList();
+		}
+		List<JInternalFrame> result = new ArrayList<JInternalFrame>();
+		collectIntersecting(r, frame, result);
+		return result;
+	}
+
+	/**
+	 * Is any part of the rectangle covered by a frame?
+	 *
+	 * @param area
+	 * @return occupied
+	 */
+	public boolean isOccupied(Rectangle area) {
+		validate();
+		if (area.isEmpty()) {
+			return false;
+		}
+		for (int cy = cellOf(area.y); cy <= cellOf(area.y + area.height - 1); cy++) {
+			for (int cx = cellOf(area.x); cx <= cellOf(area.x + area.width
+					- 1); cx++) {
+				List<JInternalFrame> cell = cells.get(key(cx, cy));
+				if (cell == null) {
+					continue;
+				}
+				for (JInternalFrame frame : cell) {
+					if (bounds.get(frame).intersects(area)) {
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the frame closest to a point. A point inside a frame is at distance
+	 * zero from it.
+	 *
+	 * @param x
+	 * @param y
+	 * @return frame, or null if the desktop is empty
+	 */
+	public JInternalFrame nearestFrame(int x, int y) {
+		validate();
+		if (bounds.isEmpty()) {
+			return null;
+		}
+		int cx = cellOf(x);
+		int cy = cellOf(y);
+		int maxRing = Math.max(
+				Math.max(Math.abs(cx - minCellX), Math.abs(maxCellX - cx)),
+				Math.max(Math.abs(cy - minCellY), Math.abs(maxCellY - cy)));
+
+		JInternalFrame nearest = null;
+		long nearestDistance = Long.MAX_VALUE;
+		for (int ring = 0; ring <= maxRing; ring++) {
+			// Everything in this ring is at least (ring - 1) cells away
+			long ringDistance = (long) (ring - 1) * cellSize;
+			if (nearest != null && ring > 0
+					&& ringDistance * ringDistance > nearestDistance) {
+				break;
+			}
+			for (int gy = cy - ring; gy <= cy + ring; gy++) {
+				boolean edgeRow = gy == cy - ring || gy == cy + ring;
+				int step = edgeRow ? 1 : Math.max(1, ring * 2);
+				for (int gx = cx - ring; gx <= cx + ring; gx += step) {
+					List<JInternalFrame> cell = cells.get(key(gx, gy));
+					if (cell == null) {
+						continue;
+					}
+					for (JInternalFrame frame : cell) {
+						long d = distanceSquared(bounds.get(frame), x, y);
+						if (d < nearestDistance) {
+							nearest = frame;
+							nearestDistance = d;
+						}
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	private void collectIntersecting(Rectangle area, JInternalFrame exclude,
+			List<JInternalFrame> result) {
+		if (area.isEmpty()) {
+			return;
+		}
+		Set<JInternalFrame> seen = Collections
+				.newSetFromMap(new IdentityHashMap<JInternalFrame, Boolean>());
+		for (int cy = cellOf(area.y); cy <= cellOf(area.y + area.height - 1); cy++) {
+			for (int cx = cellOf(area.x); cx <= cellOf(area.x + area.width
+					- 1); cx++) {
+				List<JInternalFrame> cell = cells.get(key(cx, cy));
+				if (cell == null) {
+					continue;
+				}
+				for (JInternalFrame frame : cell) {
+					if (frame != exclude && bounds.get(frame).intersects(area)
+							&& seen.add(frame)) {
+						result.add(frame);
+					}
+				}
+			}
+		}
+	}
+
+	private void validate() {
+		if (valid) {
+			return;
+		}
+		cells.clear();
+		bounds.clear();
+		for (JInternalFrame frame : tracker.trackedFrames()) {
+			insert(frame);
+		}
+		valid = true;
+	}
+
+	private void insert(JInternalFrame frame) {
+		Rectangle r = visibleBounds(frame);
+		bounds.put(frame, r);
+		if (r.isEmpty()) {
+			return;
+		}
+		int x0 = cellOf(r.x);
+		int y0 = cellOf(r.y);
+		int x1 = cellOf(r.x + r.width - 1);
+		int y1 = cellOf(r.y + r.height - 1);
+		for (int cy = y0; cy <= y1; cy++) {
+			for (int cx = x0; cx <= x1; cx++) {
+				Long key = key(cx, cy);
+				List<JInternalFrame> cell = cells.get(key);
+				if (cell == null) {
+					cell = new ArrayList<JInternalFrame>(4);
+					cells.put(key, cell);
+				}
+				cell.add(frame);
+			}
+		}
+		minCellX = Math.min(minCellX, x0);
+		minCellY = Math.min(minCellY, y0);
+		maxCellX = Math.max(maxCellX, x1);
+		maxCellY = Math.max(maxCellY, y1);
+	}
+
+	private void delete(JInternalFrame frame) {
+		Rectangle r = bounds.remove(frame);
+		if (r == null || r.isEmpty()) {
+			return;
+		}
+		for (int cy = cellOf(r.y); cy <= cellOf(r.y + r.height - 1); cy++) {
+			for (int cx = cellOf(r.x); cx <= cellOf(r.x + r.width - 1); cx++) {
+				Long key = key(cx, cy);
+				List<JInternalFrame> cell = cells.get(key);
+				if (cell == null) {
+					continue;
+				}
+				cell.remove(frame);
+				if (cell.isEmpty()) {
+					cells.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Frames sit on the desktop themselves unless iconified, when their icon
+	 * takes their place
+	 *
+	 * @param frame
+	 * @return bounds
+	 */
+	private Rectangle visibleBounds(JInternalFrame frame) {
+		if (frame.getParent() != desktop && frame.getDesktopIcon() != null
+				&& frame.getDesktopIcon().getParent() == desktop) {
+			return frame.getDesktopIcon().getBounds();
+		}
+		return frame.getBounds();
+	}
+
+	private int zOrder(JInternalFrame frame) {
+		Component c = frame.getParent() == desktop ? frame : frame
+				.getDesktopIcon();
+		return desktop.getComponentZOrder(c);
+	}
+
+	private int cellOf(int coordinate) {
+		return Math.floorDiv(coordinate, cellSize);
+	}
+
+	private static Long key(int cx, int cy) {
+		return Long.valueOf(((long) cx << 32) | (cy & 0xffffffffL));
+	}
+
+	private static long distanceSquared(Rectangle r, int x, int y) {
+		long dx = Math.max(0, Math.max(r.x - x, x - (r.x + r.width)));
+		long dy = Math.max(0, Math.max(r.y - y, y - (r.y + r.height)));
+		return dx * dx + dy * dy;
+	}
+
+	/**
+	 * Keeps the grid in step with the desktop's frames
+	 */
+	private class Tracker extends MDIDesktopFrameTracker {
+
+		Tracker(MDIDesktopPane desktop) {
+			super(desktop);
+		}
+
+		@Override
+		protected void frameTracked(JInternalFrame frame) {
+			if (valid) {
+				insert(frame);
+			}
+		}
+
+		@Override
+		protected void frameUntracked(JInternalFrame frame) {
+			if (valid) {
+				delete(frame);
+			}
+		}
+
+		@Override
+		protected void frameBoundsChanged(JInternalFrame frame) {
+			if (valid) {
+				delete(frame);
+				insert(frame);
+			}
+		}
+	}
+}
@@ -0,0 +1,208 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.awt.AWTEvent;
+import java.awt.EventQueue;
+import java.awt.Toolkit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopMetrics.Operation;
+
+/**
+ * Watches how long the event dispatch thread spends on each event. Every
+ * dispatch time goes into the <code>EVENT_DISPATCH</code> histogram, and a
+ * watchdog thread reports any event that is still being dispatched after the
+ * threshold, along with the frame operation that was running at the time.
+ * Once a stalled event has finished dispatching, its full length is recorded
+ * in the metrics and reported to listeners.
+ *
+ * @author Dean
+ */
+public class MDIDesktopStallDetector {
+
+	public static final long DEFAULT_THRESHOLD_MILLIS = 100;
+
+	/**
+	 * Told about each stall while it is still happening, and again with its
+	 * full length once it is over
+	 */
+	public interface StallListener {
+
+		/**
+		 * The event dispatch thread has been stuck on one event for longer
+		 * than the threshold. Called on the watchdog thread.
+		 *
+		 * @param stalledNanos
+		 *            how long the event has been dispatching so far
+		 * @param operation
+		 *            the frame operation running, or null
+		 * @param edtStack
+		 *            where the event dispatch thread is right now
+		 */
+		void stallDetected(long stalledNanos, Operation operation,
+				StackTraceElement[] edtStack);
+
+		/**
+		 * An event that took longer than the threshold has finished
+		 * dispatching. Called on the event dispatch thread.
+		 *
+		 * @param stalledNanos
+		 *            how long the event took
+		 * @param operation
+		 *            the frame operation the watchdog saw running, or null
+		 */
+		void stallEnded(long stalledNanos, Operation operation);
+	}
+
+	private final MDIDesktopMetrics metrics;
+	private final long thresholdNanos;
+	private final CopyOnWriteArrayList<StallListener> listeners = new CopyOnWriteArrayList<StallListener>();
+
+	private volatile long dispatchStart;
+	private volatile Thread dispatchThread;
+
+	// What the watchdog saw running during the stall that began at stallStart
+	private volatile long stallStart;
+	private volatile Operation stallOperation;
+
+	private WatchedEventQueue queue;
+	private Thread watchdog;
+
+	public MDIDesktopStallDetector() {
+		this(DEFAULT_THRESHOLD_MILLIS);
+	}
+
+	/**
+	 * @param thresholdMillis
+	 *            how long one event may take before it counts as a stall
+	 */
+	public MDIDesktopStallDetector(long thresholdMillis) {
+		checkArgument(thresholdMillis > 0, "Threshold must be positive");
+		this.metrics = MDIDesktopMetrics.getInstance();
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+	}
+
+	public void addStallListener(StallListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeStallListener(StallListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Put our event queue in front of the system one and start the watchdog
+	 */
+	public synchronized void start() {
+		if (queue != null) {
+			return;
+		}
+		queue = new WatchedEventQueue();
+		Toolkit.getDefaultToolkit().getSystemEventQueue().push(queue);
+
+		watchdog = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch();
+			}
+		}, "mdidesktop-stall-detector");
+		watchdog.setDaemon(true);
+		watchdog.start();
+	}
+
+	/**
+	 * Stop watching and hand event dispatch back to the previous queue
+	 */
+	public synchronized void stop() {
+		if (queue == null) {
+			return;
+		}
+		queue.uninstall();
+		queue = null;
+		watchdog.interrupt();
+		watchdog = null;
+	}
+
+	public boolean isRunning() {
+		return queue != null;
+	}
+
+	private void watch() {
+		long pollMillis = Math.max(1,
+				TimeUnit.NANOSECONDS.toMillis(thresholdNanos) / 4);
+		long reported = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				Thread.sleep(pollMillis);
+			} catch (InterruptedException e) {
+				return;
+			}
+			long start = dispatchStart;
+			if (start == 0 || start == reported) {
+				continue;
+			}
+			long stalled = System.nanoTime() - start;
+			if (stalled < thresholdNanos) {
+				continue;
+			}
+			// Report each stuck event once; its length is recorded when it
+			// finishes
+			reported = start;
+			Operation operation = metrics.getCurrentEdtOperation();
+			stallOperation = operation;
+			stallStart = start;
+			if (listeners.isEmpty()) {
+				continue;
+			}
+			Thread edt = dispatchThread;
+			StackTraceElement[] stack = edt == null ? new StackTraceElement[0]
+					: edt.getStackTrace();
+			for (StallListener listener : listeners) {
+				listener.stallDetected(stalled, operation, stack);
+			}
+		}
+	}
+
+	/**
+	 * Times every event it dispatches
+	 */
+	private class WatchedEventQueue extends EventQueue {
+
+		@Override
+		protected void dispatchEvent(AWTEvent event) {
+			long outer = dispatchStart;
+			long start = System.nanoTime();
+			dispatchThread = Thread.currentThread();
+			dispatchStart = start;
+			try {
+				super.dispatchEvent(event);
+			} finally {
+				long end = System.nanoTime();
+				metrics.record(Operation.EVENT_DISPATCH, end - start);
+				// Restarted by any nested event loop this event ran
+				long stalledSince = dispatchStart;
+				// A nested event loop, e.g. a modal dialog, has just shown the
+				// outer event is not stuck, so restart its clock
+				dispatchStart = outer == 0 ? 0 : end;
+				if (end - stalledSince >= thresholdNanos) {
+					stallEnded(end - stalledSince, stalledSince);
+				}
+			}
+		}
+
+		private void stallEnded(long stalledNanos, long stalledSince) {
+			Operation operation = stallStart == stalledSince ? stallOperation
+					: null;
+			metrics.recordStall(stalledNanos, operation);
+			for (StallListener listener : listeners) {
+				listener.stallEnded(stalledNanos, operation);
+			}
+		}
+
+		void uninstall() {
+			pop();
+		}
+	}
+}
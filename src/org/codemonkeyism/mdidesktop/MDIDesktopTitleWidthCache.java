@@ -0,0 +1,170 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.TextLayout;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded cache of measured frame title widths, keyed by title and font.
+ *
+ * Titles are measured by the advance of a <code>TextLayout</code>, which is
+ * expensive. For each font the first few titles are also measured with
+ * <code>FontMetrics.stringWidth</code>, which is an advance width too; if
+ * every one of them agrees, later titles that need no complex layout take the
+ * cheaper metrics path. Both count trailing spaces and ignore italic
+ * overhang, so a title has the same width whichever path measured it.
+ *
+ * @author Dean
+ */
+class MDIDesktopTitleWidthCache {
+
+	private static final int MAXIMUM_SIZE = 1024;
+
+	/** How many titles must agree before the metrics path is trusted */
+	private static final int CALIBRATION_SAMPLES = 8;
+
+	private static final FontRenderContext FRC = new FontRenderContext(null,
+			false, false);
+
+	private final Component component;
+
+	private final Cache<TitleKey, Integer> widths = CacheBuilder.newBuilder()
+			.maximumSize(MAXIMUM_SIZE).build();
+
+	private final Map<Font, Calibration> calibrations = new IdentityHashMap<Font, Calibration>();
+
+	/**
+	 * @param component
+	 *            used to look up font metrics
+	 */
+	MDIDesktopTitleWidthCache(Component component) {
+		this.component = component;
+	}
+
+	/**
+	 * Get the width of the title when drawn in the given font
+	 *
+	 * @param title
+	 * @param font
+	 * @return width
+	 */
+	int getWidth(final String title, final Font font) {
+		if (title == null || title.isEmpty()) {
+			return 0;
+		}
+		try {
+			return widths.get(new TitleKey(title, font),
+					new Callable<Integer>() {
+						@Override
+						public Integer call() {
+							return Integer.valueOf(measure(title, font));
+						}
+					}).intValue();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Forget every measured width, e.g. after a look and feel change
+	 */
+	void clear() {
+		widths.invalidateAll();
+		calibrations.clear();
+	}
+
+	private int measure(String title, Font font) {
+		if (font.hasLayoutAttributes() || !isSimpleText(title)) {
+			return layoutWidth(title, font);
+		}
+		Calibration calibration = calibrations.get(font);
+		if (calibration == null) {
+			calibration = new Calibration(component.getFontMetrics(font));
+			calibrations.put(font, calibration);
+		}
+		if (calibration.trusted()) {
+			return calibration.metrics.stringWidth(title);
+		}
+		int width = layoutWidth(title, font);
+		calibration.sample(width == calibration.metrics.stringWidth(title));
+		return width;
+	}
+
+	/**
+	 * Latin text below the combining diacritics block never needs shaping or
+	 * bidi reordering, so advance-based metrics can be compared against it
+	 *
+	 * @param text
+	 * @return simple
+	 */
+	private static boolean isSimpleText(String text) {
+		for (int i = 0; i < text.length(); i++) {
+			if (text.charAt(i) >= '\u0300') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int layoutWidth(String title, Font font) {
+		return (int) new TextLayout(title, font, FRC).getAdvance();
+	}
+
+	/**
+	 * Whether the cheap metrics path has matched the layout path for a font
+	 */
+	private static final class Calibration {
+
+		final FontMetrics metrics;
+		int samples;
+		boolean mismatch;
+
+		Calibration(FontMetrics metrics) {
+			this.metrics = metrics;
+		}
+
+		boolean trusted() {
+			return !mismatch && samples >= CALIBRATION_SAMPLES;
+		}
+
+		void sample(boolean matched) {
+			samples++;
+			mismatch |= !matched;
+		}
+	}
+
+	private static final class TitleKey {
+
+		final String title;
+		final Font font;
+
+		TitleKey(String title, Font font) {
+			this.title = title;
+			this.font = font;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof TitleKey)) {
+				return false;
+			}
+			TitleKey other = (TitleKey) o;
+			return title.equals(other.title) && font.equals(other.font);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hashCode(title, font);
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Container;
+import java.awt.Rectangle;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+
+import javax.swing.JInternalFrame;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Releases the content of frames that are scrolled well out of view and
+ * rebuilds it when they come back. Only <code>MDIDesktopFrame</code>s that
+ * have registered a content factory take part.
+ *
+ * A frame counts as on screen when it overlaps the visible part of the
+ * desktop grown by a margin, so content is rebuilt a little before it scrolls
+ * into view. The selected frame is never virtualized.
+ *
+ * @author Dean
+ */
+class MDIDesktopVirtualizer extends MDIDesktopFrameTracker implements
+		ChangeListener, HierarchyListener {
+
+	static final int DEFAULT_MARGIN = 200;
+
+	private int margin = DEFAULT_MARGIN;
+
+	private JViewport viewport;
+
+	private boolean updatePending;
+
+	private final Rectangle visible = new Rectangle();
+
+	private final Runnable update = new Runnable() {
+		@Override
+		public void run() {
+			updatePending = false;
+			if (isInstalled()) {
+				update();
+			}
+		}
+	};
+
+	MDIDesktopVirtualizer(MDIDesktopPane desktop) {
+		super(desktop);
+	}
+
+	@Override
+	void install() {
+		super.install();
+		desktop.addHierarchyListener(this);
+		bindViewport();
+		scheduleUpdate();
+	}
+
+	@Override
+	void uninstall() {
+		desktop.removeHierarchyListener(this);
+		if (viewport != null) {
+			viewport.removeChangeListener(this);
+			viewport = null;
+		}
+		for (JInternalFrame frame : trackedFrames()) {
+			if (frame instanceof MDIDesktopFrame) {
+				((MDIDesktopFrame) frame).devirtualize();
+			}
+		}
+		super.uninstall();
+	}
+
+	void setMargin(int margin) {
+		this.margin = margin;
+		if (isInstalled()) {
+			scheduleUpdate();
+		}
+	}
+
+	@Override
+	protected void frameTracked(JInternalFrame frame) {
+		scheduleUpdate();
+	}
+
+	@Override
+	protected void frameUntracked(JInternalFrame frame) {
+		// Frames leaving the desktop keep whatever content they have
+	}
+
+	@Override
+	protected void frameBoundsChanged(JInternalFrame frame) {
+		scheduleUpdate();
+	}
+
+	@Override
+	public void stateChanged(ChangeEvent e) {
+		scheduleUpdate();
+	}
+
+	@Override
+	public void hierarchyChanged(HierarchyEvent e) {
+		if ((e.getChangeFlags() & HierarchyEvent.PARENT_CHANGED) != 0) {
+			bindViewport();
+			scheduleUpdate();
+		}
+	}
+
+	/**
+	 * Follow the scrolling of whichever viewport the desktop currently sits in
+	 */
+	private void bindViewport() {
+		Container parent = desktop.getParent();
+		JViewport current = parent instanceof JViewport ? (JViewport) parent
+				: null;
+		if (current == viewport) {
+			return;
+		}
+		if (viewport != null) {
+			viewport.removeChangeListener(this);
+		}
+		viewport = current;
+		if (viewport != null) {
+			viewport.addChangeListener(this);
+		}
+	}
+
+	/**
+	 * Scrolling fires a burst of change events, so only one update is queued
+	 * at a time
+	 */
+	private void scheduleUpdate() {
+		if (!updatePending) {
+			updatePending = true;
+			SwingUtilities.invokeLater(update);
+		}
+	}
+
+	private void update() {
+		desktop.computeVisibleRect(visible);
+		visible.grow(margin, margin);
+		for (JInternalFrame frame : trackedFrames()) {
+			if (!(frame instanceof MDIDesktopFrame)) {
+				continue;
+			}
+			MDIDesktopFrame mdiFrame = (MDIDesktopFrame) frame;
+			if (!mdiFrame.isVirtualizable()) {
+				continue;
+			}
+			if (isOnScreen(mdiFrame)) {
+				mdiFrame.devirtualize();
+			} else {
+				mdiFrame.virtualize();
+			}
+		}
+	}
+
+	private boolean isOnScreen(MDIDesktopFrame frame) {
+		if (frame.isSelected()) {
+			return true;
+		}
+		if (frame.isIcon()) {
+			return false;
+		}
+		return visible.intersects(frame.getX(), frame.getY(),
+				frame.getWidth(), frame.getHeight());
+	}
+}
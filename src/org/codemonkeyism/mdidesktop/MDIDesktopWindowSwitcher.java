@@ -0,0 +1,392 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.KeyEventDispatcher;
+import java.awt.KeyboardFocusManager;
+import java.awt.Rectangle;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.HierarchyEvent;
+import java.awt.event.HierarchyListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JInternalFrame;
+import javax.swing.JLayeredPane;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JRootPane;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+
+/**
+ * Keyboard window switcher for an <code>MDIDesktopPane</code>.
+ *
+ * Ctrl+Tab shows the frames in most recently activated order with the
+ * previous frame selected; further presses of Tab, or Shift+Tab, move through
+ * the list while Ctrl is held and releasing Ctrl switches to the selected
+ * frame. Ctrl+E opens the same list with a filter field: typing narrows the
+ * list by title, the arrow keys move, Enter switches and Escape cancels.
+ *
+ * The chosen frame is de-iconified, brought to the front, selected and
+ * scrolled into view.
+ *
+ * Keys are caught ahead of focus traversal, which would otherwise take Ctrl+Tab
+ * inside text components, and only while the desktop's window has the focus.
+ * That also puts them ahead of the application's own key bindings, so the
+ * switcher is only there once turned on with
+ * <code>MDIDesktopPane.setWindowSwitcherEnabled()</code>.
+ *
+ * @author Dean
+ */
+public class MDIDesktopWindowSwitcher {
+
+	private static final int VISIBLE_ROWS = 12;
+	private static final int WIDTH = 360;
+
+	private final MDIDesktopPane desktop;
+	private final MDIDesktopFrameIndex index;
+
+	private final JPanel popup = new JPanel(new BorderLayout());
+	private final JTextField filter = new JTextField();
+	private final FrameListModel model = new FrameListModel();
+	private final JList<JInternalFrame> list = new JList<JInternalFrame>(model);
+
+	private boolean showing;
+	private boolean cycling;
+	private Component previousFocusOwner;
+
+	private final KeyEventDispatcher dispatcher = new KeyEventDispatcher() {
+		@Override
+		public boolean dispatchKeyEvent(KeyEvent e) {
+			return handleKey(e);
+		}
+	};
+
+	private final HierarchyListener displayabilityListener = new HierarchyListener() {
+		@Override
+		public void hierarchyChanged(HierarchyEvent e) {
+			if ((e.getChangeFlags() & HierarchyEvent.DISPLAYABILITY_CHANGED) != 0) {
+				updateDispatcher();
+			}
+		}
+	};
+
+	private boolean installed;
+	private boolean dispatching;
+
+	MDIDesktopWindowSwitcher(MDIDesktopPane desktop, MDIDesktopFrameIndex index) {
+		this.desktop = desktop;
+		this.index = index;
+
+		list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		list.setVisibleRowCount(VISIBLE_ROWS);
+		list.setFocusable(false);
+		list.setCellRenderer(new FrameRenderer());
+		list.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				int row = list.locationToIndex(e.getPoint());
+				if (row >= 0) {
+					list.setSelectedIndex(row);
+					commit();
+				}
+			}
+		});
+
+		filter.setFocusTraversalKeysEnabled(false);
+		filter.getDocument().addDocumentListener(new DocumentListener() {
+			@Override
+			public void insertUpdate(DocumentEvent e) {
+				refilter();
+			}
+
+			@Override
+			public void removeUpdate(DocumentEvent e) {
+				refilter();
+			}
+
+			@Override
+			public void changedUpdate(DocumentEvent e) {
+				refilter();
+			}
+		});
+		filter.addFocusListener(new FocusAdapter() {
+			@Override
+			public void focusLost(FocusEvent e) {
+				if (!e.isTemporary()) {
+					hide(false);
+				}
+			}
+		});
+
+		popup.setBorder(BorderFactory.createCompoundBorder(
+				BorderFactory.createLineBorder(UIManager
+						.getColor("controlShadow")), BorderFactory
+						.createEmptyBorder(4, 4, 4, 4)));
+		popup.add(filter, BorderLayout.NORTH);
+		popup.add(new JScrollPane(list), BorderLayout.CENTER);
+	}
+
+	/**
+	 * Start listening for the switcher keys
+	 */
+	void install() {
+		if (installed) {
+			return;
+		}
+		installed = true;
+		desktop.addHierarchyListener(displayabilityListener);
+		updateDispatcher();
+	}
+
+	/**
+	 * Stop listening for the switcher keys
+	 */
+	void uninstall() {
+		if (!installed) {
+			return;
+		}
+		installed = false;
+		hide(false);
+		desktop.removeHierarchyListener(displayabilityListener);
+		updateDispatcher();
+	}
+
+	public boolean isShowing() {
+		return showing;
+	}
+
+	/**
+	 * Show the switcher
+	 *
+	 * @param withFilter
+	 *            true for the filter field, false for Ctrl+Tab cycling
+	 */
+	public void show(boolean withFilter) {
+		JRootPane rootPane = SwingUtilities.getRootPane(desktop);
+		if (rootPane == null || index.size() == 0) {
+			return;
+		}
+		if (!showing) {
+			previousFocusOwner = KeyboardFocusManager
+					.getCurrentKeyboardFocusManager().getFocusOwner();
+			JLayeredPane layers = rootPane.getLayeredPane();
+			layers.add(popup, JLayeredPane.POPUP_LAYER);
+			showing = true;
+		}
+		cycling = !withFilter;
+		filter.setVisible(withFilter);
+		filter.setText("");
+		refilter();
+		list.setSelectedIndex(Math.min(1, model.getSize() - 1));
+		list.ensureIndexIsVisible(list.getSelectedIndex());
+		placePopup(rootPane);
+		filter.requestFocusInWindow();
+	}
+
+	/**
+	 * Switch to the frame selected in the switcher
+	 */
+	public void commit() {
+		JInternalFrame frame = list.getSelectedValue();
+		hide(frame != null);
+		if (frame != null) {
+			desktop.showFrame(frame);
+		}
+	}
+
+	private void hide(boolean switching) {
+		if (!showing) {
+			return;
+		}
+		showing = false;
+		Container parent = popup.getParent();
+		if (parent != null) {
+			Rectangle bounds = popup.getBounds();
+			parent.remove(popup);
+			parent.repaint(bounds.x, bounds.y, bounds.width, bounds.height);
+		}
+		model.setFrames(Collections.<JInternalFrame> emptyList());
+		if (!switching && previousFocusOwner != null) {
+			previousFocusOwner.requestFocusInWindow();
+		}
+		previousFocusOwner = null;
+	}
+
+	private void refilter() {
+		if (!showing) {
+			return;
+		}
+		List<JInternalFrame> frames = index.search(filter.getText());
+		model.setFrames(frames);
+		list.setSelectedIndex(frames.isEmpty() ? -1 : 0);
+	}
+
+	private void move(int delta) {
+		int size = model.getSize();
+		if (size == 0) {
+			return;
+		}
+		int row = (list.getSelectedIndex() + delta + size) % size;
+		list.setSelectedIndex(row);
+		list.ensureIndexIsVisible(row);
+	}
+
+	private void placePopup(JRootPane rootPane) {
+		Rectangle visible = SwingUtilities.convertRectangle(desktop,
+				desktop.getVisibleRect(), rootPane.getLayeredPane());
+		Dimension size = popup.getPreferredSize();
+		int width = Math.min(Math.max(WIDTH, size.width), visible.width);
+		int height = Math.min(size.height, visible.height);
+		popup.setBounds(visible.x + (visible.width - width) / 2, visible.y
+				+ (visible.height - height) / 3, width, height);
+		popup.revalidate();
+		popup.repaint();
+	}
+
+	private boolean handleKey(KeyEvent e) {
+		if (!isInDesktopWindow(e.getComponent())) {
+			return false;
+		}
+		int code = e.getKeyCode();
+		boolean ctrl = (e.getModifiersEx() & InputEvent.CTRL_DOWN_MASK) != 0;
+
+		if (!showing) {
+			if (e.getID() != KeyEvent.KEY_PRESSED || !ctrl) {
+				return false;
+			}
+			if (code == KeyEvent.VK_TAB) {
+				show(false);
+				if (e.isShiftDown()) {
+					move(-2);
+				}
+				return showing;
+			}
+			if (code == KeyEvent.VK_E && !e.isShiftDown()) {
+				show(true);
+				return showing;
+			}
+			return false;
+		}
+
+		if (e.getID() == KeyEvent.KEY_RELEASED) {
+			if (code == KeyEvent.VK_CONTROL && cycling) {
+				commit();
+				return true;
+			}
+			return false;
+		}
+		if (e.getID() != KeyEvent.KEY_PRESSED) {
+			return false;
+		}
+		switch (code) {
+		case KeyEvent.VK_TAB:
+			move(e.isShiftDown() ? -1 : 1);
+			return true;
+		case KeyEvent.VK_DOWN:
+			move(1);
+			return true;
+		case KeyEvent.VK_UP:
+			move(-1);
+			return true;
+		case KeyEvent.VK_ENTER:
+			commit();
+			return true;
+		case KeyEvent.VK_ESCAPE:
+			hide(false);
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private boolean isInDesktopWindow(Component source) {
+		return source != null && desktop.isShowing()
+				&& SwingUtilities.getWindowAncestor(desktop) == windowOf(source);
+	}
+
+	private static Component windowOf(Component c) {
+		return c instanceof java.awt.Window ? c : SwingUtilities
+				.getWindowAncestor(c);
+	}
+
+	private void updateDispatcher() {
+		boolean wanted = installed && desktop.isDisplayable();
+		if (wanted == dispatching) {
+			return;
+		}
+		KeyboardFocusManager focusManager = KeyboardFocusManager
+				.getCurrentKeyboardFocusManager();
+		if (wanted) {
+			focusManager.addKeyEventDispatcher(dispatcher);
+		} else {
+			focusManager.removeKeyEventDispatcher(dispatcher);
+		}
+		dispatching = wanted;
+	}
+
+	private static class FrameListModel extends
+			AbstractListModel<JInternalFrame> {
+
+		private static final long serialVersionUID = 1L;
+
+		private List<JInternalFrame> frames = Collections.emptyList();
+
+		void setFrames(List<JInternalFrame> frames) {
+			int old = this.frames.size();
+			this.frames = frames;
+			if (old > 0) {
+				fireIntervalRemoved(this, 0, old - 1);
+			}
+			if (!frames.isEmpty()) {
+				fireIntervalAdded(this, 0, frames.size() - 1);
+			}
+		}
+
+		@Override
+		public int getSize() {
+			return frames.size();
+		}
+
+		@Override
+		public JInternalFrame getElementAt(int index) {
+			return frames.get(index);
+		}
+	}
+
+	private static class FrameRenderer extends DefaultListCellRenderer {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		public Component getListCellRendererComponent(JList<?> list,
+				Object value, int index, boolean isSelected,
+				boolean cellHasFocus) {
+			JInternalFrame frame = (JInternalFrame) value;
+			String title = frame.getTitle();
+			if (title == null || title.isEmpty()) {
+				title = " ";
+			}
+			super.getListCellRendererComponent(list, title, index, isSelected,
+					cellHasFocus);
+			setIcon(frame.getFrameIcon());
+			return this;
+		}
+	}
+}
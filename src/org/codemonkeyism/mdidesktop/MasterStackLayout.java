@@ -0,0 +1,66 @@
+package org.codemonkeyism.mdidesktop;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopLayoutEngine.FrameConstraints;
+
+/**
+ * The most recently activated frame as the master, filling the left part of
+ * the desktop, with the rest stacked top to bottom in the column on the
+ * right.
+ * 
+ * @author Dean
+ */
+public class MasterStackLayout implements DesktopLayout {
+
+	public static final double DEFAULT_MASTER_RATIO = 0.6;
+
+	private final double masterRatio;
+
+	public MasterStackLayout() {
+		this(DEFAULT_MASTER_RATIO);
+	}
+
+	/**
+	 * @param masterRatio
+	 *            the share of the desktop's width the master takes
+	 */
+	public MasterStackLayout(double masterRatio) {
+		checkArgument(masterRatio > 0 && masterRatio <= 1,
+				"masterRatio must be in (0, 1]");
+		this.masterRatio = masterRatio;
+	}
+
+	public double getMasterRatio() {
+		return masterRatio;
+	}
+
+	@Override
+	public int[] layout(FrameConstraints[] frames, int width, int height) {
+		int count = frames.length;
+		if (count <= 1) {
+			return TileHorizontalLayout.strips(frames, width, height, false);
+		}
+
+		FrameConstraints master = frames[0];
+		int masterWidth = MDIDesktopLayoutEngine.clamp(
+				(int) Math.round(width * masterRatio), master.lowestWidth(),
+				master.highestWidth());
+		int stackWidth = Math.max(0, width - masterWidth);
+
+		FrameConstraints[] stack = new FrameConstraints[count - 1];
+		System.arraycopy(frames, 1, stack, 0, stack.length);
+		int[] stackBounds = TileHorizontalLayout.strips(stack, stackWidth,
+				height, false);
+
+		int[] bounds = new int[count * 4];
+		bounds[2] = masterWidth;
+		bounds[3] = MDIDesktopLayoutEngine.clamp(height, master.lowestHeight(),
+				master.highestHeight());
+		System.arraycopy(stackBounds, 0, bounds, 4, stackBounds.length);
+		for (int i = 1; i < count; i++) {
+			bounds[i * 4] += masterWidth;
+		}
+		return bounds;
+	}
+}
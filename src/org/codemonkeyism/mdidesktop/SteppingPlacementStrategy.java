@@ -0,0 +1,56 @@
+package org.codemonkeyism.mdidesktop;
+
+import java.awt.Point;
+
+import javax.swing.JInternalFrame;
+
+/**
+ * The original placement: each frame that has not been given a location is
+ * put <code>FRAME_OFFSET</code> down and to the right of the last one,
+ * wrapping back to the edge when it would run off the desktop.
+ * 
+ * @author Dean
+ */
+public class SteppingPlacementStrategy implements FramePlacementStrategy {
+
+	private Point lastLocation;
+
+	@Override
+	public Point placeFrame(MDIDesktopPane desktop, JInternalFrame frame) {
+		Point childLocation = frame.getLocation();
+		if (lastLocation == null && childLocation.x == 0
+				&& childLocation.y == 0) {
+			lastLocation = new Point(0, 0);
+		} else {
+			if (childLocation.x == 0 && childLocation.y == 0) {
+				int newX = lastLocation.x + MDIDesktopPane.FRAME_OFFSET;
+				int newY = lastLocation.y + MDIDesktopPane.FRAME_OFFSET;
+				newX = newX < 0 ? 0 : newX;
+				newY = newY < 0 ? 0 : newY;
+
+				int bottomPosition = newY + frame.getHeight();
+				if (newX > desktop.getSize().getWidth()) {
+					newX = 0;
+				}
+				if (bottomPosition > desktop.getSize().getHeight()) {
+					newY = 0;
+				}
+
+				Point newLocation = new Point(newX, newY);
+				lastLocation = newLocation;
+				return newLocation;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void frameRemoved(MDIDesktopPane desktop, JInternalFrame frame) {
+		if (lastLocation != null) {
+			if (frame.getLocation().x == lastLocation.x
+					&& frame.getLocation().y == lastLocation.y) {
+				lastLocation = null;
+			}
+		}
+	}
+}
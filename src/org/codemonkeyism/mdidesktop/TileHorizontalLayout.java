@@ -0,0 +1,62 @@
+package org.codemonkeyism.mdidesktop;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopLayoutEngine.FrameConstraints;
+
+/**
+ * Frames stacked top to bottom, each the full width of the desktop, sharing
+ * its height. The most recently activated frame is at the top.
+ * 
+ * @author Dean
+ */
+public class TileHorizontalLayout implements DesktopLayout {
+
+	@Override
+	public int[] layout(FrameConstraints[] frames, int width, int height) {
+		return strips(frames, width, height, false);
+	}
+
+	/**
+	 * Lay frames out in a single row or column of strips
+	 * 
+	 * @param frames
+	 * @param width
+	 * @param height
+	 * @param across
+	 *            true for side by side columns, false for rows one above the
+	 *            other
+	 * @return bounds
+	 */
+	static int[] strips(FrameConstraints[] frames, int width, int height,
+			boolean across) {
+		int count = frames.length;
+		int[] min = new int[count];
+		int[] max = new int[count];
+		for (int i = 0; i < count; i++) {
+			min[i] = across ? frames[i].lowestWidth() : frames[i].lowestHeight();
+			max[i] = across ? frames[i].highestWidth() : frames[i]
+					.highestHeight();
+		}
+		int[] lengths = MDIDesktopLayoutEngine.distribute(across ? width
+				: height, min, max);
+
+		int[] bounds = new int[count * 4];
+		int offset = 0;
+		for (int i = 0; i < count; i++) {
+			FrameConstraints f = frames[i];
+			int b = i * 4;
+			if (across) {
+				bounds[b] = offset;
+				bounds[b + 2] = lengths[i];
+				bounds[b + 3] = MDIDesktopLayoutEngine.clamp(height,
+						f.lowestHeight(), f.highestHeight());
+			} else {
+				bounds[b + 1] = offset;
+				bounds[b + 2] = MDIDesktopLayoutEngine.clamp(width,
+						f.lowestWidth(), f.highestWidth());
+				bounds[b + 3] = lengths[i];
+			}
+			offset += lengths[i];
+		}
+		return bounds;
+	}
+}
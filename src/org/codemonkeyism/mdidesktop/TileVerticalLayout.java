@@ -0,0 +1,17 @@
+package org.codemonkeyism.mdidesktop;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopLayoutEngine.FrameConstraints;
+
+/**
+ * Frames side by side, each the full height of the desktop, sharing its
+ * width. The most recently activated frame is on the left.
+ * 
+ * @author Dean
+ */
+public class TileVerticalLayout implements DesktopLayout {
+
+	@Override
+	public int[] layout(FrameConstraints[] frames, int width, int height) {
+		return TileHorizontalLayout.strips(frames, width, height, true);
+	}
+}
@@ -0,0 +1,117 @@
+package org.codemonkeyism.mdidesktop;
+
+import org.codemonkeyism.mdidesktop.MDIDesktopLayoutEngine.FrameConstraints;
+
+/**
+ * A squarified treemap of the frames: the desktop is divided into
+ * rectangles kept as close to square as possible, with more recently
+ * activated frames given more area. The frame at rank r, counting the most
+ * recent as 0, is weighted 1 / (r + 1).
+ * 
+ * Frames that are not resizable keep their size at the top left of their
+ * rectangle, and resizable frames are kept within their limits, so frames
+ * with large minimum sizes may overlap their neighbours.
+ * 
+ * @author Dean
+ */
+public class TreemapLayout implements DesktopLayout {
+
+	@Override
+	public int[] layout(FrameConstraints[] frames, int width, int height) {
+		int count = frames.length;
+		int[] bounds = new int[count * 4];
+		if (count == 0 || width <= 0 || height <= 0) {
+			return bounds;
+		}
+
+		// Areas in descending order, scaled to fill the desktop
+		double[] areas = new double[count];
+		double sum = 0;
+		for (int i = 0; i < count; i++) {
+			areas[i] = 1.0 / (i + 1);
+			sum += areas[i];
+		}
+		double scale = (double) width * height / sum;
+		for (int i = 0; i < count; i++) {
+			areas[i] *= scale;
+		}
+
+		double x = 0;
+		double y = 0;
+		double w = width;
+		double h = height;
+		int i = 0;
+		while (i < count) {
+			// Lay the row along the shorter side of what is left
+			boolean column = w >= h;
+			double side = column ? h : w;
+			double rowArea = areas[i];
+			double worst = worstRatio(areas[i], areas[i], rowArea, side);
+			int end = i + 1;
+			while (end < count) {
+				double next = rowArea + areas[end];
+				double ratio = worstRatio(areas[i], areas[end], next, side);
+				if (ratio > worst) {
+					break;
+				}
+				worst = ratio;
+				rowArea = next;
+				end++;
+			}
+			// The last row takes whatever is left, to absorb rounding
+			double thickness = end == count ? (column ? w : h) : rowArea
+					/ side;
+
+			double along = column ? y : x;
+			for (int j = i; j < end; j++) {
+				double length = areas[j] / rowArea * side;
+				if (column) {
+					place(bounds, j, frames[j], x, along, x + thickness, along
+							+ length);
+				} else {
+					place(bounds, j, frames[j], along, y, along + length, y
+							+ thickness);
+				}
+				along += length;
+			}
+			if (column) {
+				x += thickness;
+				w -= thickness;
+			} else {
+				y += thickness;
+				h -= thickness;
+			}
+			i = end;
+		}
+		return bounds;
+	}
+
+	/**
+	 * The worst aspect ratio in a row laid along a side, given the row's
+	 * largest and smallest areas and its total
+	 */
+	private static double worstRatio(double largest, double smallest,
+			double total, double side) {
+		double sideSquared = side * side;
+		double totalSquared = total * total;
+		return Math.max(sideSquared * largest / totalSquared, totalSquared
+				/ (sideSquared * smallest));
+	}
+
+	/**
+	 * Round both edges rather than the size, so that neighbouring frames meet
+	 * without gaps
+	 */
+	private static void place(int[] bounds, int index, FrameConstraints f,
+			double left, double top, double right, double bottom) {
+		int x = (int) Math.round(left);
+		int y = (int) Math.round(top);
+		int b = index * 4;
+		bounds[b] = x;
+		bounds[b + 1] = y;
+		bounds[b + 2] = MDIDesktopLayoutEngine.clamp((int) Math.round(right)
+				- x, f.lowestWidth(), f.highestWidth());
+		bounds[b + 3] = MDIDesktopLayoutEngine.clamp((int) Math.round(bottom)
+				- y, f.lowestHeight(), f.highestHeight());
+	}
+}